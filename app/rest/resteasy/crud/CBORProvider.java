@@ -0,0 +1,86 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package rest.resteasy.crud;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import play.db.Model;
+import play.modules.resteasy.crud.CBORReader;
+import play.modules.resteasy.crud.CBORWriter;
+import play.modules.resteasy.crud.CRUD;
+import play.modules.resteasy.crud.DataTable;
+import play.modules.resteasy.crud.JAXBWalker;
+import play.modules.resteasy.crud.UnmarshallingError;
+
+/**
+ * Reads and writes CRUD entities as CBOR, for resources with {@link CRUD#cbor()}. Entities are written with 
+ * {@link JAXBWalker} in plain mode, with the same keys as in JSON, and read back with {@link CBORReader}.
+ */
+@Provider
+@Produces(CBORWriter.APPLICATION_CBOR)
+@Consumes(CBORWriter.APPLICATION_CBOR)
+public class CBORProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return JAXBWalker.canWalk(type, false);
+	}
+
+	public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+		Object root = JAXBWalker.unproxy(entity);
+		if(root instanceof DataTable && ((DataTable<?>) root).facadeFor() != null 
+				&& !JAXBWalker.canWalk(root.getClass(), ((DataTable<?>) root).facadeFor(), false))
+			throw new IllegalStateException("Cannot write "+((DataTable<?>) root).facadeFor().getName()+" as CBOR");
+		OutputStream out = new BufferedOutputStream(entityStream);
+		JAXBWalker.walk(root, new CBORWriter(out), JAXBWalker.makeLinksListener(annotations), false);
+		out.flush();
+	}
+
+	public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return Model.class.isAssignableFrom(type) && JAXBWalker.canWalk(type, false);
+	}
+
+	public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
+		try {
+			return CBORReader.read(new BufferedInputStream(entityStream), type);
+		} catch (IllegalArgumentException e) {
+			throw new UnmarshallingError(e.getMessage());
+		}
+	}
+}
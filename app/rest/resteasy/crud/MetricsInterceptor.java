@@ -0,0 +1,60 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package rest.resteasy.crud;
+
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.spi.interception.MessageBodyWriterContext;
+import org.jboss.resteasy.spi.interception.MessageBodyWriterInterceptor;
+
+import play.db.Model;
+import play.modules.resteasy.crud.CRUDMetrics;
+import play.modules.resteasy.crud.DataTable;
+import play.modules.resteasy.crud.Metrics;
+
+/**
+ * Reports the time spent marshalling CRUD lists and entities to {@link CRUDMetrics}.
+ */
+@Provider
+@ServerInterceptor
+public class MetricsInterceptor implements MessageBodyWriterInterceptor {
+
+	public void write(MessageBodyWriterContext context) throws IOException, WebApplicationException {
+		Object entity = context.getEntity();
+		String endpoint;
+		Class<?> model;
+		if(entity instanceof DataTable){
+			endpoint = "list";
+			model = ((DataTable<?>) entity).facadeFor();
+		}else if(entity instanceof Model){
+			endpoint = "get";
+			model = entity.getClass();
+		}else{
+			context.proceed();
+			return;
+		}
+		long start = System.nanoTime();
+		context.proceed();
+		Metrics.time(endpoint, model, CRUDMetrics.MARSHAL, start);
+	}
+}
@@ -0,0 +1,44 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package rest.resteasy.crud;
+
+import javax.ws.rs.ext.Provider;
+
+import org.jboss.resteasy.annotations.interception.ServerInterceptor;
+import org.jboss.resteasy.core.ServerResponse;
+import org.jboss.resteasy.spi.interception.PostProcessInterceptor;
+
+import play.modules.resteasy.crud.DataTable;
+import play.modules.resteasy.crud.StreamedList;
+import play.modules.resteasy.crud.StreamingJSONWriter;
+
+/**
+ * Makes {@link StreamingJSONProvider} write the JSON of every list of {@link StreamedList} rows, since Jettison
+ * would hold the whole document in memory.
+ */
+@Provider
+@ServerInterceptor
+public class StreamedListInterceptor implements PostProcessInterceptor {
+
+	public void postProcess(ServerResponse response) {
+		Object entity = response.getEntity();
+		if(entity instanceof DataTable && ((DataTable<?>) entity).isStreamed())
+			response.setAnnotations(StreamingJSONWriter.withStreamingJSON(response.getAnnotations()));
+	}
+}
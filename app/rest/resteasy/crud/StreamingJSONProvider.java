@@ -0,0 +1,126 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package rest.resteasy.crud;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+
+import org.jboss.resteasy.annotations.Decorator;
+import org.jboss.resteasy.links.AddLinks;
+
+import play.modules.resteasy.crud.DataTable;
+import play.modules.resteasy.crud.JAXBWalker;
+import play.modules.resteasy.crud.StreamingJSON;
+import play.modules.resteasy.crud.StreamingJSONWriter;
+
+/**
+ * Writes JSON with {@link JAXBWalker} and {@link StreamingJSONWriter} for resource methods with {@link StreamingJSON},
+ * or for every resource method when <code>resteasy.crud.json</code> is set to <code>streaming</code>. The JSON
+ * is the same as what JAXB and Jettison write, including the {@link AddLinks} links. Entities the walker does
+ * not support are handed over to the next JSON provider, which is JAXB.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class StreamingJSONProvider implements MessageBodyWriter<Object> {
+
+	// set while we look up the provider we delegate to, so that it is not us
+	private static final ThreadLocal<Boolean> delegating = new ThreadLocal<Boolean>();
+
+	@Context
+	private Providers providers;
+
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return delegating.get() == null
+			&& StreamingJSONWriter.isEnabled(annotations)
+			&& !hasOtherDecorators(annotations)
+			&& JAXBWalker.canWalk(type);
+	}
+
+	public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+		Object root = JAXBWalker.unproxy(entity);
+		if(!canWalkContents(root)){
+			delegate(entity, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+			return;
+		}
+		JAXBWalker.Listener listener = JAXBWalker.makeLinksListener(annotations);
+		String charset = mediaType.getParameters().get("charset");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(entityStream, charset != null ? charset : "UTF-8"));
+		JAXBWalker.walk(root, new StreamingJSONWriter(writer), listener);
+		writer.flush();
+	}
+
+	/**
+	 * Checks the values of the DataTable properties that are declared as Object
+	 */
+	private boolean canWalkContents(Object root) {
+		if(!(root instanceof DataTable))
+			return true;
+		DataTable<?> dataTable = (DataTable<?>) root;
+		if(dataTable.facadeFor() != null && !JAXBWalker.canWalk(root.getClass(), dataTable.facadeFor()))
+			return false;
+		Object oob = dataTable.getOob();
+		return oob == null || JAXBWalker.canWalk(root.getClass(), JAXBWalker.unproxy(oob).getClass());
+	}
+
+	/**
+	 * Checks for marshaller decorators other than {@link AddLinks}, which only JAXB can apply
+	 */
+	private boolean hasOtherDecorators(Annotation[] annotations) {
+		for(Annotation annotation : annotations){
+			if(annotation.annotationType() != AddLinks.class
+					&& annotation.annotationType().isAnnotationPresent(Decorator.class))
+				return true;
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void delegate(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+		MessageBodyWriter<Object> writer;
+		delegating.set(Boolean.TRUE);
+		try{
+			writer = (MessageBodyWriter<Object>) providers.getMessageBodyWriter(type, genericType, annotations, mediaType);
+		}finally{
+			delegating.remove();
+		}
+		if(writer == null)
+			throw new WebApplicationException(500);
+		writer.writeTo(entity, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package models;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import play.db.jpa.GenericModel;
+import play.modules.resteasy.crud.CRUDField;
+import play.modules.resteasy.crud.SearchMode;
+
+/**
+ * A typical CRUD model, with one field of every type
+ */
+@Entity
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public class BenchBook extends GenericModel {
+
+	@Id
+	@GeneratedValue
+	@XmlAttribute
+	public Long id;
+
+	@CRUDField(editable = true, sortable = true, searchable = true)
+	@XmlElement
+	public String title;
+
+	@CRUDField(editable = true, sortable = true, searchable = true, search = SearchMode.PREFIX)
+	@XmlElement
+	public String author;
+
+	@CRUDField(editable = true, sortable = true)
+	@XmlElement
+	public Integer pages;
+
+	@CRUDField(editable = true, sortable = true)
+	@XmlElement
+	public BigDecimal price;
+
+	@CRUDField(editable = true, sortable = true)
+	@XmlElement
+	public Date published;
+
+	@CRUDField(editable = true)
+	@XmlElement
+	public Boolean available;
+}
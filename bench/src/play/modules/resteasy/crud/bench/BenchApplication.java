@@ -0,0 +1,148 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud.bench;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.UriInfo;
+
+import org.jboss.resteasy.specimpl.UriInfoImpl;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import play.Play;
+import play.db.Model;
+import play.db.jpa.JPAPlugin;
+import play.modules.resteasy.crud.CRUDSecure;
+import play.modules.resteasy.crud.RESTResource;
+
+/**
+ * Starts the benchmark application (bench/app, or the <tt>bench.app</tt> system property) once per JVM, with 
+ * {@link #ROWS} books in its in-memory database, and runs code the way a request would.
+ */
+@State(Scope.Benchmark)
+public class BenchApplication {
+
+	/**
+	 * The number of books in the database
+	 */
+	public static final int ROWS = 1000;
+
+	private static List<Object> bookIds;
+
+	/**
+	 * The book model
+	 */
+	public Class<? extends Model> model;
+	/**
+	 * The book resource, enhanced by the CRUD plugin
+	 */
+	public RESTResource resource;
+	/**
+	 * The URI info for requests to the book collection
+	 */
+	public UriInfo uriInfo;
+
+	@Setup
+	public void setUp() throws Exception {
+		start();
+		model = Play.classloader.loadClass("models.BenchBook").asSubclass(Model.class);
+		resource = (RESTResource) Play.classloader.loadClass("resources.BenchBookResource").newInstance();
+		uriInfo = new UriInfoImpl(URI.create("http://localhost/books"), URI.create("http://localhost/"), 
+				"/books", null, Collections.<PathSegment>emptyList());
+	}
+
+	private synchronized void start() throws Exception {
+		if(Play.started)
+			return;
+		Play.init(new File(System.getProperty("bench.app", "bench/app")), "bench");
+		Play.start();
+		Class<? extends Model> model = Play.classloader.loadClass("models.BenchBook").asSubclass(Model.class);
+		List<Object> ids = new ArrayList<Object>(ROWS);
+		begin(false);
+		try{
+			for(int i=0;i<ROWS;i++){
+				Model book = newBook(model, i);
+				book._save();
+				ids.add(book._key());
+			}
+		}finally{
+			end(false);
+		}
+		bookIds = ids;
+	}
+
+	/**
+	 * Starts a request: a transaction and the per-request permission cache
+	 */
+	public void begin(boolean readOnly) {
+		JPAPlugin.startTx(readOnly);
+		CRUDSecure.startRequest();
+	}
+
+	/**
+	 * Ends a request
+	 * @param rollback true to roll back the transaction, so that benchmarks leave the database as they found it
+	 */
+	public void end(boolean rollback) {
+		CRUDSecure.endRequest();
+		JPAPlugin.closeTx(rollback);
+	}
+
+	/**
+	 * Gets the id of an existing book
+	 * @param i any number
+	 */
+	public Object bookId(int i) {
+		return bookIds.get((i & Integer.MAX_VALUE) % bookIds.size());
+	}
+
+	/**
+	 * Makes a new, unsaved book
+	 * @param i a number to make its values from
+	 */
+	public Model newBook(int i) throws Exception {
+		return newBook(model, i);
+	}
+
+	private static Model newBook(Class<? extends Model> model, int i) throws Exception {
+		Model book = model.newInstance();
+		set(book, "title", "Title " + i);
+		set(book, "author", "Author " + (i % 37));
+		set(book, "pages", Integer.valueOf(100 + i % 400));
+		set(book, "price", new BigDecimal(i % 100).add(new BigDecimal("0.99")));
+		set(book, "published", new Date(1000000000000L + i * 86400000L));
+		set(book, "available", Boolean.valueOf(i % 2 == 0));
+		return book;
+	}
+
+	private static void set(Object entity, String field, Object value) throws Exception {
+		Field f = entity.getClass().getField(field);
+		f.set(entity, value);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud.bench;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import play.modules.resteasy.crud.DataTable;
+import play.modules.resteasy.crud.DataTableQuery;
+import play.modules.resteasy.crud.Representation;
+
+/**
+ * Measures marshalling a page of books with the RESTEasy JAXB and Jettison providers, without links
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class MarshalBenchmark {
+
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	@Param({"20", "500"})
+	public int length;
+
+	private DataTable<?> page;
+
+	@Setup
+	public void setUp(BenchApplication app) {
+		RegisterBuiltin.register(ResteasyProviderFactory.getInstance());
+		DataTableQuery q = new DataTableQuery();
+		q.length = length;
+		q.count = DataTableQuery.COUNT_EXACT;
+		q.echo = "1";
+		q.uriInfo = app.uriInfo;
+		app.begin(true);
+		try{
+			page = (DataTable<?>) app.resource.list(app.model, q).getEntity();
+		}finally{
+			app.end(false);
+		}
+	}
+
+	@Benchmark
+	public byte[] json() {
+		return Representation.marshal(page, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE).bytes;
+	}
+
+	@Benchmark
+	public byte[] xml() {
+		return Representation.marshal(page, NO_ANNOTATIONS, MediaType.APPLICATION_XML_TYPE).bytes;
+	}
+}
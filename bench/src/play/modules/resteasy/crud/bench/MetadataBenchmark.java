@@ -0,0 +1,109 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud.bench;
+
+import java.lang.reflect.Field;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import play.db.Model;
+import play.db.Model.Property;
+import play.modules.resteasy.crud.CRUDField;
+import play.modules.resteasy.crud.CRUDModel;
+import play.modules.resteasy.crud.PagedQuery;
+import play.modules.resteasy.crud.RESTResource;
+import play.modules.resteasy.crud.SearchMode;
+
+/**
+ * Measures the per-request work that does not touch the database: model metadata, sort validation, query 
+ * building and descriptors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class MetadataBenchmark {
+
+	/**
+	 * Gives us access to the protected helpers of RESTResource
+	 */
+	public static class Probe extends RESTResource {
+		public int walk(Class<? extends Model> model) {
+			final int[] count = new int[1];
+			walkProperties(model, new PropertyWalker(){
+				@Override
+				public void walk(Property property, Field field, CRUDField crud) {
+					if(crud != null)
+						count[0]++;
+				}
+			});
+			return count[0];
+		}
+
+		public boolean sortValid(String sort, Set<String> validColumns) {
+			return isSortValid(sort, validColumns);
+		}
+	}
+
+	private Probe probe;
+	private Set<String> sortable;
+
+	@Setup
+	public void setUp(BenchApplication app) {
+		probe = new Probe();
+		sortable = CRUDModel.get(app.model).sortable;
+	}
+
+	@Benchmark
+	public int walkProperties(BenchApplication app) {
+		return probe.walk(app.model);
+	}
+
+	@Benchmark
+	public boolean isSortValid() {
+		return probe.sortValid("title desc, author, published ASC", sortable);
+	}
+
+	/**
+	 * Builds the select and count HQL of a searched, sorted page. The count key contains the count HQL, 
+	 * which is built along with the select HQL.
+	 */
+	@Benchmark
+	public String pagedQueryHQL() {
+		PagedQuery<Object> query = new PagedQuery<Object>("FROM BenchBook");
+		query.searchField("title", SearchMode.CONTAINS, null);
+		query.searchField("author", SearchMode.PREFIX, null);
+		query.search = "tit";
+		query.order = "title desc";
+		return query.getCountKey();
+	}
+
+	@Benchmark
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Object descriptor(BenchApplication app) {
+		return new RESTResource.Descriptor(app.model);
+	}
+}
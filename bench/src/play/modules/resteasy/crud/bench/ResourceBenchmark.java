@@ -0,0 +1,104 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import play.db.Model;
+import play.modules.resteasy.crud.DataTableQuery;
+import play.modules.resteasy.crud.RESTResource;
+
+/**
+ * Measures the generated CRUD endpoints, from the resource method call to the returned Response, including the
+ * database and the transaction but not the marshalling (see {@link MarshalBenchmark}). Writes are rolled back.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ResourceBenchmark {
+
+	private int next;
+
+	@Benchmark
+	public Response list(BenchApplication app) {
+		DataTableQuery q = new DataTableQuery();
+		q.start = (next++ % 10) * 20;
+		q.length = 20;
+		q.sort = "title";
+		q.count = DataTableQuery.COUNT_EXACT;
+		q.uriInfo = app.uriInfo;
+		app.begin(true);
+		try{
+			return app.resource.list(app.model, q);
+		}finally{
+			app.end(false);
+		}
+	}
+
+	@Benchmark
+	public Response get(BenchApplication app) {
+		app.begin(true);
+		try{
+			return app.resource.get(app.model, app.bookId(next++));
+		}finally{
+			app.end(false);
+		}
+	}
+
+	@Benchmark
+	public Response add(BenchApplication app) throws Exception {
+		Model book = app.newBook(next++);
+		app.begin(false);
+		try{
+			return add(app.resource, app.model, book, app.uriInfo);
+		}finally{
+			app.end(true);
+		}
+	}
+
+	@Benchmark
+	public Response edit(BenchApplication app) throws Exception {
+		Model book = app.newBook(next);
+		Object id = app.bookId(next++);
+		app.begin(false);
+		try{
+			return edit(app.resource, app.model, id, book);
+		}finally{
+			app.end(true);
+		}
+	}
+
+	private static <T extends Model> Response add(RESTResource resource, Class<T> model, Model elem, UriInfo uriInfo) {
+		return resource.add(model, model.cast(elem), uriInfo);
+	}
+
+	private static <T extends Model> Response edit(RESTResource resource, Class<T> model, Object id, Model elem) {
+		return resource.edit(model, id, model.cast(elem));
+	}
+}
@@ -46,6 +46,9 @@ public class AutoComplete {
 	 * @return a list of max AUTOCOMPLETE_MAX_RESULTS autocomplete results
 	 */
 	public static List<String> getAutoComplete(Class<?> entity, String field, String q) {
+		List<String> indexed = AutoCompleteIndex.lookup(entity, field, q, AUTOCOMPLETE_MAX_RESULTS);
+		if (indexed != null)
+			return indexed;
 		String hql = "SELECT DISTINCT " + field + " FROM " + entity.getName();
 		if (!StringUtils.isEmpty(q))
 			hql += " WHERE LOCATE(lower(:q), lower(" + field + ")) > 0";
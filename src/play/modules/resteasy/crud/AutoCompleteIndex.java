@@ -0,0 +1,270 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.Query;
+
+import org.apache.commons.lang.StringUtils;
+
+import play.Logger;
+import play.Play;
+import play.db.Model;
+import play.db.jpa.JPA;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * In-memory index of the distinct values of an autocomplete field, for fields marked with
+ * {@link CRUDField#autoCompleteIndex()}. It is built from the database on first use and kept up to date
+ * by the CRUD resources when their writes are committed, so autocomplete queries do not need to hit the 
+ * database. Writes that do not go through the CRUD resources are not seen until the application is reloaded.
+ * 
+ * Fields with more distinct values than <code>resteasy.crud.autoComplete.maxValues</code> (10000 by default)
+ * are not indexed, and we fall back to querying the database for them.
+ */
+public class AutoCompleteIndex {
+
+	/**
+	 * Default maximum number of distinct values we index per field
+	 */
+	public static final int DEFAULT_MAX_VALUES = 10000;
+
+	private static final Map<String, AutoCompleteIndex> indexes = new ConcurrentHashMap<String, AutoCompleteIndex>();
+
+	private static class Value {
+		final String lowerCase;
+		int count;
+
+		Value(String value, int count) {
+			this.lowerCase = value.toLowerCase();
+			this.count = count;
+		}
+	}
+
+	private final String entity;
+	private final String field;
+	private final int maxValues;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// ordered like the database would, more or less
+	private TreeMap<String, Value> values;
+	private boolean tooLarge;
+
+	private AutoCompleteIndex(Class<?> entity, String field) {
+		this.entity = entity.getName();
+		this.field = field;
+		this.maxValues = Integer.parseInt(Play.configuration.getProperty("resteasy.crud.autoComplete.maxValues", 
+				String.valueOf(DEFAULT_MAX_VALUES)));
+	}
+
+	/**
+	 * Looks up autocomplete values in the index
+	 * @param entity the type of entity
+	 * @param field the property of the entity to autocomplete for
+	 * @param q an optional query for the completion
+	 * @param max the maximum number of results
+	 * @return the matching values, or null if this field is not indexed and the database should be queried
+	 */
+	public static List<String> lookup(Class<?> entity, String field, String q, int max) {
+		AutoCompleteIndex index = getIndex(entity, field);
+		if(index == null)
+			return null;
+		return index.lookup(q, max);
+	}
+
+	/**
+	 * Gets the values of the indexed fields of the given entity, to pass to {@link #update(Class, Object[], Object[])}
+	 * @param model the model type
+	 * @param entity the entity
+	 * @return the values of the indexed fields, or null if the model has no indexed fields
+	 */
+	public static Object[] snapshot(Class<? extends Model> model, Model entity) {
+		List<CRUDProperty> properties = CRUDModel.get(model).autoCompleteIndexed;
+		if(properties.isEmpty())
+			return null;
+		Object[] ret = new Object[properties.size()];
+		try {
+			for(int i=0;i<ret.length;i++)
+				ret[i] = properties.get(i).field.get(entity);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	/**
+	 * Updates the indexes of the given model once the current transaction is committed
+	 * @param model the model type
+	 * @param before the values before the write as returned by {@link #snapshot(Class, Model)}, or null for inserts
+	 * @param after the values after the write as returned by {@link #snapshot(Class, Model)}, or null for deletes
+	 */
+	public static void update(final Class<? extends Model> model, final Object[] before, final Object[] after) {
+		if(before == null && after == null)
+			return;
+		TransactionHooks.afterCommit(new Runnable(){
+			@Override
+			public void run() {
+				List<CRUDProperty> properties = CRUDModel.get(model).autoCompleteIndexed;
+				for(int i=0;i<properties.size();i++){
+					String oldValue = before != null ? (String) before[i] : null;
+					String newValue = after != null ? (String) after[i] : null;
+					if(StringUtils.equals(oldValue, newValue))
+						continue;
+					AutoCompleteIndex index = indexes.get(key(model, properties.get(i).name));
+					// if it's not built yet it will see this write when it is
+					if(index != null)
+						index.update(oldValue, newValue);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Forgets every index, called when the application is reloaded
+	 */
+	public static void clear() {
+		indexes.clear();
+	}
+
+	/**
+	 * Drops the indexes of the given model once the current transaction is committed, so they are rebuilt 
+	 * from the database when next used. Use this after writes that cannot be tracked entity by entity.
+	 * @param model the model type
+	 */
+	public static void invalidate(final Class<? extends Model> model) {
+		if(CRUDModel.get(model).autoCompleteIndexed.isEmpty())
+			return;
+		TransactionHooks.afterCommit(new Runnable(){
+			public void run() {
+				for(CRUDProperty property : CRUDModel.get(model).autoCompleteIndexed)
+					indexes.remove(key(model, property.name));
+			}
+		});
+	}
+
+	private static String key(Class<?> entity, String field) {
+		return entity.getName() + "." + field;
+	}
+
+	private static AutoCompleteIndex getIndex(Class<?> entity, String field) {
+		if(!Model.class.isAssignableFrom(entity))
+			return null;
+		CRUDProperty property = CRUDModel.get(entity.asSubclass(Model.class)).getProperty(field);
+		if(property == null || !CRUDModel.get(entity.asSubclass(Model.class)).autoCompleteIndexed.contains(property))
+			return null;
+		String key = key(entity, field);
+		AutoCompleteIndex index = indexes.get(key);
+		if(index == null){
+			synchronized(indexes){
+				index = indexes.get(key);
+				if(index == null){
+					index = new AutoCompleteIndex(entity, field);
+					indexes.put(key, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private List<String> lookup(String q, int max) {
+		lock.readLock().lock();
+		try{
+			if(values == null && !tooLarge){
+				// we need to build it with the write lock
+				lock.readLock().unlock();
+				lock.writeLock().lock();
+				try{
+					if(values == null && !tooLarge)
+						build();
+				}finally{
+					// downgrade
+					lock.readLock().lock();
+					lock.writeLock().unlock();
+				}
+			}
+			if(tooLarge)
+				return null;
+			List<String> ret = new ArrayList<String>(max);
+			String lowerCaseQuery = StringUtils.isEmpty(q) ? null : q.toLowerCase();
+			for(Map.Entry<String, Value> entry : values.entrySet()){
+				if(lowerCaseQuery == null || entry.getValue().lowerCase.contains(lowerCaseQuery)){
+					ret.add(entry.getKey());
+					if(ret.size() == max)
+						break;
+				}
+			}
+			return ret;
+		}finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	private void build() {
+		Query countQuery = JPA.em().createQuery("SELECT COUNT(DISTINCT " + field + ") FROM " + entity);
+		long count = (Long) countQuery.getSingleResult();
+		if(count > maxValues){
+			Logger.info("Not indexing autocomplete for %s.%s: %s distinct values", entity, field, count);
+			tooLarge = true;
+			return;
+		}
+		Query query = JPA.em().createQuery("SELECT " + field + ", COUNT(*) FROM " + entity 
+				+ " WHERE " + field + " IS NOT NULL GROUP BY " + field);
+		TreeMap<String, Value> values = new TreeMap<String, Value>();
+		for(Object row : query.getResultList()){
+			Object[] columns = (Object[]) row;
+			String value = (String) columns[0];
+			values.put(value, new Value(value, ((Number)columns[1]).intValue()));
+		}
+		Logger.debug("Indexed %s autocomplete values for %s.%s", values.size(), entity, field);
+		this.values = values;
+	}
+
+	private void update(String oldValue, String newValue) {
+		lock.writeLock().lock();
+		try{
+			if(values == null)
+				return;
+			if(oldValue != null){
+				Value value = values.get(oldValue);
+				if(value != null && --value.count <= 0)
+					values.remove(oldValue);
+			}
+			if(newValue != null){
+				Value value = values.get(newValue);
+				if(value != null)
+					value.count++;
+				else
+					values.put(newValue, new Value(newValue, 1));
+				if(values.size() > maxValues){
+					Logger.info("Dropping autocomplete index for %s.%s: too many distinct values", entity, field);
+					values = null;
+					tooLarge = true;
+				}
+			}
+		}finally{
+			lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package play.modules.resteasy.crud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The type returned to the client for batch operations, with the outcome of every item in the batch.
+ */
+@XmlRootElement(name = "batch")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BatchResponse {
+
+	/**
+	 * The outcome of a single batch item
+	 */
+	@XmlAccessorType(XmlAccessType.FIELD)
+	public static class Result {
+		/**
+		 * The position of the item in the batch, starting at 0
+		 */
+		@XmlAttribute
+		private int index;
+		/**
+		 * The HTTP status code this item would have gotten on its own
+		 */
+		@XmlAttribute
+		private int status;
+		/**
+		 * The entity id, if known
+		 */
+		@XmlElement
+		private String id;
+		/**
+		 * The URI of the new entity, for additions
+		 */
+		@XmlElement
+		private String location;
+		/**
+		 * The validation errors, if the item is not valid
+		 */
+		@XmlElement
+		private InvalidResponse invalid;
+
+		public Result() {
+		}
+
+		public Result(int index, int status) {
+			this.index = index;
+			this.status = status;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(Object id) {
+			this.id = id != null ? id.toString() : null;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		public void setLocation(String location) {
+			this.location = location;
+		}
+
+		public InvalidResponse getInvalid() {
+			return invalid;
+		}
+
+		public void setInvalid(InvalidResponse invalid) {
+			this.invalid = invalid;
+		}
+	}
+
+	@XmlElement(name = "result")
+	private List<Result> results = new ArrayList<Result>();
+
+	/**
+	 * Adds the outcome of an item
+	 * @param index the position of the item in the batch
+	 * @param status the HTTP status code for this item
+	 * @return the new result
+	 */
+	public Result add(int index, int status) {
+		Result result = new Result(index, status);
+		results.add(result);
+		return result;
+	}
+
+	public List<Result> getResults() {
+		return results;
+	}
+}
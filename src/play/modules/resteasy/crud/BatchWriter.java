@@ -0,0 +1,141 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package play.modules.resteasy.crud;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import play.Play;
+import play.PlayPlugin;
+import play.db.Model;
+import play.db.jpa.JPA;
+import play.db.jpa.JPABase;
+import play.exceptions.UnexpectedException;
+
+/**
+ * Writes many entities in the current transaction. Unlike {@link JPABase#_save()} and {@link JPABase#_delete()},
+ * which flush after every entity, this only flushes when {@link #flush()} is called, so that Hibernate can batch
+ * the statements if <code>hibernate.jdbc.batch_size</code> is set. Entities that are not JPA entities are written 
+ * with their own save and delete methods.
+ */
+public class BatchWriter {
+
+	private final List<JPABase> saved = new ArrayList<JPABase>();
+
+	// JPABase keeps the cascade walk of _save() to itself
+	private static final Method SAVE_AND_CASCADE;
+	private static final ThreadLocal<Set<JPABase>> AVOID_CASCADE_SAVE_LOOPS;
+	static {
+		try {
+			SAVE_AND_CASCADE = JPABase.class.getDeclaredMethod("saveAndCascade", Boolean.TYPE);
+			SAVE_AND_CASCADE.setAccessible(true);
+			Field loops = JPABase.class.getDeclaredField("avoidCascadeSaveLoops");
+			loops.setAccessible(true);
+			@SuppressWarnings("unchecked")
+			ThreadLocal<Set<JPABase>> value = (ThreadLocal<Set<JPABase>>) loops.get(null);
+			AVOID_CASCADE_SAVE_LOOPS = value;
+		} catch (Exception e) {
+			throw new UnexpectedException(e);
+		}
+	}
+
+	/**
+	 * Gets the number of entities to write between each flush and clear of the persistence context, as set by 
+	 * <code>resteasy.crud.batch.size</code>, defaults to 50.
+	 */
+	public static int getBatchSize() {
+		return Integer.parseInt(Play.configuration.getProperty("resteasy.crud.batch.size", "50"));
+	}
+
+	/**
+	 * Inserts or updates the given entity on the next flush
+	 */
+	public void save(Model entity) {
+		if(!(entity instanceof JPABase)){
+			entity._save();
+			return;
+		}
+		JPABase jpaEntity = (JPABase) entity;
+		EntityManager em = JPA.em();
+		if(!em.contains(entity)){
+			em.persist(entity);
+			PlayPlugin.postEvent("JPASupport.objectPersisted", entity);
+		}
+		// Play only writes changes to entities that are being saved, so like _save() we mark the entity and 
+		// its cascaded associations, which also sends their update events
+		saveAndCascade(jpaEntity, true);
+		saved.add(jpaEntity);
+	}
+
+	private static void saveAndCascade(JPABase entity, boolean willBeSaved) {
+		AVOID_CASCADE_SAVE_LOOPS.set(new HashSet<JPABase>());
+		try {
+			SAVE_AND_CASCADE.invoke(entity, willBeSaved);
+		} catch (IllegalAccessException e) {
+			throw new UnexpectedException(e);
+		} catch (InvocationTargetException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new UnexpectedException(e.getCause());
+		} finally {
+			AVOID_CASCADE_SAVE_LOOPS.get().clear();
+		}
+	}
+
+	/**
+	 * Deletes the given entity on the next flush
+	 */
+	public void delete(Model entity) {
+		if(!(entity instanceof JPABase)){
+			entity._delete();
+			return;
+		}
+		JPA.em().remove(entity);
+		PlayPlugin.postEvent("JPASupport.objectDeleted", entity);
+	}
+
+	/**
+	 * Makes sure that changes made to the given entity are not written
+	 */
+	public void discard(Model entity) {
+		if(entity instanceof JPABase)
+			JPA.em().detach(entity);
+	}
+
+	/**
+	 * Writes every pending change and clears the persistence context, so that every entity loaded so far can 
+	 * be garbage-collected
+	 */
+	public void flush() {
+		EntityManager em = JPA.em();
+		em.flush();
+		for(JPABase entity : saved)
+			saveAndCascade(entity, false);
+		saved.clear();
+		em.clear();
+	}
+}
@@ -0,0 +1,416 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+import play.libs.Codec;
+
+import static play.modules.resteasy.crud.CBORWriter.*;
+
+/**
+ * Reads the CBOR (RFC 7049) that {@link CBORWriter} writes back into entities. The CBOR data items are decoded
+ * into Maps, Lists, Strings, Longs, Doubles, Booleans, byte arrays, BigIntegers, BigDecimals and Dates, which are 
+ * then bound to the fields that the JAXB annotations of the entity expose, converted to their Java types. 
+ * Keys that map to no field are ignored, as JAXB does with unknown elements.
+ */
+public class CBORReader {
+
+	private static final int MAX_DEPTH = 100;
+	private static final BigInteger UNSIGNED_LONG = BigInteger.ONE.shiftLeft(64);
+	private static final DatatypeFactory datatypeFactory;
+	static{
+		try {
+			datatypeFactory = DatatypeFactory.newInstance();
+		} catch (DatatypeConfigurationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private final InputStream in;
+	private int depth;
+
+	/**
+	 * Creates a CBOR reader
+	 * @param in where to read the CBOR data from, which should be buffered
+	 */
+	public CBORReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads an entity, written as a map with the root element name as only key
+	 * @param in where to read the CBOR data from
+	 * @param type the entity type
+	 * @return the entity
+	 * @throws IllegalArgumentException if the data is not valid CBOR or does not match the entity type
+	 */
+	public static <T> T read(InputStream in, Class<T> type) throws IOException {
+		Object value = new CBORReader(in).readValue();
+		String rootName = JAXBWalker.getRootName(type);
+		if(!(value instanceof Map) || ((Map<?, ?>) value).size() != 1 || !((Map<?, ?>) value).containsKey(rootName))
+			throw new IllegalArgumentException("Expected a map with "+rootName+" as only key");
+		return type.cast(bind(((Map<?, ?>) value).get(rootName), type, type, 0));
+	}
+
+	/**
+	 * Reads the next data item
+	 * @return the decoded item
+	 * @throws IllegalArgumentException if the data is not valid CBOR
+	 */
+	public Object readValue() throws IOException {
+		int initial = readByte();
+		if(initial == BREAK)
+			throw new IllegalArgumentException("Unexpected break");
+		return readItem(initial);
+	}
+
+	private Object readItem(int initial) throws IOException {
+		int major = initial >>> 5;
+		int info = initial & 0x1F;
+		switch(major){
+		case MAJOR_UNSIGNED:{
+			long value = readArgument(info);
+			// over 2^63
+			return value >= 0 ? (Object) value : BigInteger.valueOf(value).add(UNSIGNED_LONG);
+		}
+		case MAJOR_NEGATIVE:{
+			long value = readArgument(info);
+			return value >= 0 ? (Object) (-1 - value) : BigInteger.valueOf(value).add(UNSIGNED_LONG).negate().subtract(BigInteger.ONE);
+		}
+		case MAJOR_BYTES:
+			return readString(MAJOR_BYTES, info);
+		case MAJOR_TEXT:
+			return new String(readString(MAJOR_TEXT, info), "UTF-8");
+		case MAJOR_ARRAY:{
+			enter();
+			List<Object> ret = new ArrayList<Object>();
+			if(info == INDEFINITE){
+				int next;
+				while((next = readByte()) != BREAK)
+					ret.add(readItem(next));
+			}else{
+				for(long i=readArgument(info);i>0;i--)
+					ret.add(readValue());
+			}
+			depth--;
+			return ret;
+		}
+		case MAJOR_MAP:{
+			enter();
+			Map<String, Object> ret = new LinkedHashMap<String, Object>();
+			if(info == INDEFINITE){
+				int next;
+				while((next = readByte()) != BREAK)
+					ret.put(readKey(next), readValue());
+			}else{
+				for(long i=readArgument(info);i>0;i--)
+					ret.put(readKey(readByte()), readValue());
+			}
+			depth--;
+			return ret;
+		}
+		case MAJOR_TAG:{
+			long tag = readArgument(info);
+			enter();
+			Object value = readValue();
+			depth--;
+			return readTagged(tag, value);
+		}
+		default:
+			return readSimple(info);
+		}
+	}
+
+	private String readKey(int initial) throws IOException {
+		if(initial >>> 5 != MAJOR_TEXT)
+			throw new IllegalArgumentException("Map keys must be text strings");
+		return (String) readItem(initial);
+	}
+
+	private Object readTagged(long tag, Object value) {
+		if(tag == TAG_DATE_TIME && value instanceof String)
+			return parseDateTime((String) value).getTime();
+		if(tag == TAG_EPOCH && value instanceof Number)
+			return new Date((long) (((Number) value).doubleValue() * 1000));
+		if((tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) && value instanceof byte[]){
+			BigInteger ret = new BigInteger(1, (byte[]) value);
+			return tag == TAG_POSITIVE_BIGNUM ? ret : ret.negate().subtract(BigInteger.ONE);
+		}
+		if(tag == TAG_DECIMAL && value instanceof List && ((List<?>) value).size() == 2){
+			Object exponent = ((List<?>) value).get(0);
+			Object mantissa = ((List<?>) value).get(1);
+			if(exponent instanceof Long && (mantissa instanceof Long || mantissa instanceof BigInteger))
+				return new BigDecimal(new BigInteger(mantissa.toString()), (int) -(Long) exponent);
+		}
+		if(tag <= TAG_DECIMAL)
+			throw new IllegalArgumentException("Invalid content for tag "+tag);
+		// we do not know the other tags
+		return value;
+	}
+
+	private Object readSimple(int info) throws IOException {
+		switch(info){
+		case FALSE & 0x1F:
+			return Boolean.FALSE;
+		case TRUE & 0x1F:
+			return Boolean.TRUE;
+		case NULL & 0x1F:
+		case UNDEFINED & 0x1F:
+			return null;
+		case HALF & 0x1F:
+			return toDouble((int) readBytes(2));
+		case FLOAT & 0x1F:
+			return (double) Float.intBitsToFloat((int) readBytes(4));
+		case DOUBLE & 0x1F:
+			return Double.longBitsToDouble(readBytes(8));
+		default:
+			throw new IllegalArgumentException("Unsupported simple value "+info);
+		}
+	}
+
+	private static double toDouble(int half) {
+		int exponent = (half >> 10) & 0x1F;
+		int mantissa = half & 0x3FF;
+		double ret;
+		if(exponent == 0)
+			ret = mantissa * Math.pow(2, -24);
+		else if(exponent == 31)
+			ret = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+		else
+			ret = (mantissa + 1024) * Math.pow(2, exponent - 25);
+		return (half & 0x8000) != 0 ? -ret : ret;
+	}
+
+	private byte[] readString(int major, int info) throws IOException {
+		if(info != INDEFINITE)
+			return readFully(readArgument(info));
+		// concatenated definite-length chunks
+		ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		int next;
+		while((next = readByte()) != BREAK){
+			if(next >>> 5 != major || (next & 0x1F) == INDEFINITE)
+				throw new IllegalArgumentException("Invalid chunk in indefinite-length string");
+			byte[] chunk = readFully(readArgument(next & 0x1F));
+			ret.write(chunk, 0, chunk.length);
+		}
+		return ret.toByteArray();
+	}
+
+	private byte[] readFully(long length) throws IOException {
+		if(length < 0 || length > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("String too long");
+		// do not trust the length for the allocation
+		ByteArrayOutputStream ret = new ByteArrayOutputStream((int) Math.min(length, 8192));
+		byte[] buffer = new byte[(int) Math.min(length, 8192)];
+		long remaining = length;
+		while(remaining > 0){
+			int read = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+			if(read == -1)
+				throw new IllegalArgumentException("Unexpected end of CBOR data");
+			ret.write(buffer, 0, read);
+			remaining -= read;
+		}
+		return ret.toByteArray();
+	}
+
+	/**
+	 * Reads the argument of an initial byte, which is negative for unsigned values over 2^63
+	 */
+	private long readArgument(int info) throws IOException {
+		if(info < 24)
+			return info;
+		switch(info){
+		case 24:
+			return readBytes(1);
+		case 25:
+			return readBytes(2);
+		case 26:
+			return readBytes(4);
+		case 27:
+			return readBytes(8);
+		default:
+			throw new IllegalArgumentException("Invalid additional information "+info);
+		}
+	}
+
+	private long readBytes(int count) throws IOException {
+		long ret = 0;
+		for(int i=0;i<count;i++)
+			ret = (ret << 8) | readByte();
+		return ret;
+	}
+
+	private int readByte() throws IOException {
+		int ret = in.read();
+		if(ret == -1)
+			throw new IllegalArgumentException("Unexpected end of CBOR data");
+		return ret;
+	}
+
+	private void enter() {
+		if(++depth > MAX_DEPTH)
+			throw new IllegalArgumentException("CBOR data nested too deep");
+	}
+
+	//
+	// Binding
+
+	private static Object bind(Object value, Class<?> type, java.lang.reflect.Type genericType, int depth) {
+		if(value == null || type == Object.class)
+			return value;
+		if(depth > MAX_DEPTH)
+			throw new IllegalArgumentException("CBOR data nested too deep");
+		if(JAXBWalker.isSimple(type) || type.isPrimitive())
+			return convert(value, type);
+		if(Collection.class.isAssignableFrom(type) || type.isArray()){
+			List<?> items = value instanceof List ? (List<?>) value : Collections.singletonList(value);
+			Class<?> itemType = JAXBWalker.getItemType(type, genericType);
+			if(type.isArray()){
+				Object ret = Array.newInstance(itemType, items.size());
+				for(int i=0;i<items.size();i++)
+					Array.set(ret, i, bind(items.get(i), itemType, itemType, depth + 1));
+				return ret;
+			}
+			Collection<Object> ret = newCollection(type);
+			for(Object item : items)
+				ret.add(bind(item, itemType, itemType, depth + 1));
+			return ret;
+		}
+		if(!(value instanceof Map))
+			throw new IllegalArgumentException("Expected a map for "+type.getSimpleName());
+		Object bean = newInstance(type);
+		for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()){
+			Field field = JAXBWalker.getField(type, (String) entry.getKey());
+			if(field == null || Modifier.isFinal(field.getModifiers()))
+				continue;
+			Object fieldValue = bind(entry.getValue(), field.getType(), field.getGenericType(), depth + 1);
+			// leave primitives to their default
+			if(fieldValue == null && field.getType().isPrimitive())
+				continue;
+			try {
+				field.set(bean, fieldValue);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return bean;
+	}
+
+	private static Object convert(Object value, Class<?> type) {
+		if(type.isInstance(value))
+			return value;
+		if(type == String.class && (value instanceof Number || value instanceof Boolean))
+			return value.toString();
+		if(value instanceof Number || value instanceof Boolean)
+			return TypeConverter.parse(type, value.toString());
+		if(value instanceof Date){
+			if(type == Calendar.class){
+				Calendar ret = Calendar.getInstance();
+				ret.setTime((Date) value);
+				return ret;
+			}
+			return TypeConverter.parse(type, String.valueOf(((Date) value).getTime()));
+		}
+		if(!(value instanceof String))
+			throw new IllegalArgumentException("Cannot read a "+value.getClass().getSimpleName()+" as "+type.getSimpleName());
+		String text = (String) value;
+		if(type.isEnum()){
+			for(Object constant : type.getEnumConstants()){
+				if(JAXBWalker.print(constant).equals(text))
+					return constant;
+			}
+			throw new IllegalArgumentException("Invalid "+type.getSimpleName()+" value: "+text);
+		}
+		if(type == byte[].class)
+			return Codec.decodeBASE64(text);
+		if(type == URI.class)
+			return URI.create(text);
+		if(type == UUID.class)
+			return UUID.fromString(text);
+		if(Date.class.isAssignableFrom(type) || type == Calendar.class){
+			Calendar calendar;
+			try {
+				calendar = parseDateTime(text);
+			} catch (IllegalArgumentException e) {
+				// milliseconds or another format TypeConverter knows
+				return TypeConverter.parse(type, text);
+			}
+			return convert(calendar.getTime(), type);
+		}
+		return TypeConverter.parse(type, text);
+	}
+
+	/**
+	 * Parses an xs:dateTime, as JAXB prints them
+	 */
+	private static Calendar parseDateTime(String text) {
+		return datatypeFactory.newXMLGregorianCalendar(text.trim()).toGregorianCalendar();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> newCollection(Class<?> type) {
+		if(!type.isInterface() && !Modifier.isAbstract(type.getModifiers()))
+			return (Collection<Object>) newInstance(type);
+		if(SortedSet.class.isAssignableFrom(type))
+			return new TreeSet<Object>();
+		if(Set.class.isAssignableFrom(type))
+			return new HashSet<Object>();
+		if(type.isAssignableFrom(ArrayList.class))
+			return new ArrayList<Object>();
+		throw new IllegalArgumentException("Unsupported collection type: "+type.getName());
+	}
+
+	private static Object newInstance(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Cannot read a "+type.getSimpleName()+", it has no default constructor");
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * A {@link JAXBWalker.Sink} that writes CBOR (RFC 7049) as it goes. Objects and arrays are written with 
+ * indefinite lengths so that nothing needs to be counted or buffered, and values are written with their native 
+ * CBOR types: integers, floats, booleans, byte strings, bignums, decimal fractions, and text strings for everything 
+ * else. Date-times are tagged text strings (tag 0), as JAXB prints them. {@link CBORReader} reads it back.
+ */
+public class CBORWriter implements JAXBWalker.Sink {
+
+	/**
+	 * The CBOR media type
+	 */
+	public static final String APPLICATION_CBOR = "application/cbor";
+	/**
+	 * The CBOR media type
+	 */
+	public static final MediaType APPLICATION_CBOR_TYPE = MediaType.valueOf(APPLICATION_CBOR);
+
+	static final int MAJOR_UNSIGNED = 0;
+	static final int MAJOR_NEGATIVE = 1;
+	static final int MAJOR_BYTES = 2;
+	static final int MAJOR_TEXT = 3;
+	static final int MAJOR_ARRAY = 4;
+	static final int MAJOR_MAP = 5;
+	static final int MAJOR_TAG = 6;
+	static final int MAJOR_SIMPLE = 7;
+
+	static final int TAG_DATE_TIME = 0;
+	static final int TAG_EPOCH = 1;
+	static final int TAG_POSITIVE_BIGNUM = 2;
+	static final int TAG_NEGATIVE_BIGNUM = 3;
+	static final int TAG_DECIMAL = 4;
+
+	static final int FALSE = 0xF4;
+	static final int TRUE = 0xF5;
+	static final int NULL = 0xF6;
+	static final int UNDEFINED = 0xF7;
+	static final int HALF = 0xF9;
+	static final int FLOAT = 0xFA;
+	static final int DOUBLE = 0xFB;
+	static final int BREAK = 0xFF;
+	static final int INDEFINITE = 31;
+
+	private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+	private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[9];
+
+	/**
+	 * Creates a CBOR writer
+	 * @param out where to write the CBOR data, which we do not flush or close
+	 */
+	public CBORWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	public void startObject() throws IOException {
+		out.write((MAJOR_MAP << 5) | INDEFINITE);
+	}
+
+	public void endObject() throws IOException {
+		out.write(BREAK);
+	}
+
+	public void startArray() throws IOException {
+		out.write((MAJOR_ARRAY << 5) | INDEFINITE);
+	}
+
+	public void endArray() throws IOException {
+		out.write(BREAK);
+	}
+
+	public void key(String key) throws IOException {
+		writeText(key);
+	}
+
+	public void value(Object value, String text) throws IOException {
+		if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			writeLong(((Number) value).longValue());
+		else if(value instanceof Double){
+			out.write(DOUBLE);
+			writeBytes(Double.doubleToLongBits((Double) value), 8);
+		}else if(value instanceof Float){
+			out.write(FLOAT);
+			writeBytes(Float.floatToIntBits((Float) value), 4);
+		}else if(value instanceof Boolean)
+			out.write((Boolean) value ? TRUE : FALSE);
+		else if(value instanceof BigInteger)
+			writeBigInteger((BigInteger) value);
+		else if(value instanceof BigDecimal){
+			BigDecimal decimal = (BigDecimal) value;
+			writeHead(MAJOR_TAG, TAG_DECIMAL);
+			writeHead(MAJOR_ARRAY, 2);
+			writeLong(-decimal.scale());
+			writeBigInteger(decimal.unscaledValue());
+		}else if(value instanceof byte[]){
+			byte[] bytes = (byte[]) value;
+			writeHead(MAJOR_BYTES, bytes.length);
+			out.write(bytes);
+		}else if(value instanceof Date || value instanceof Calendar || value instanceof XMLGregorianCalendar){
+			writeHead(MAJOR_TAG, TAG_DATE_TIME);
+			writeText(text);
+		}else
+			writeText(text);
+	}
+
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		writeHead(MAJOR_TEXT, bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeLong(long value) throws IOException {
+		if(value >= 0)
+			writeHead(MAJOR_UNSIGNED, value);
+		else
+			writeHead(MAJOR_NEGATIVE, -1 - value);
+	}
+
+	private void writeBigInteger(BigInteger value) throws IOException {
+		if(value.compareTo(MAX_LONG) <= 0 && value.compareTo(MIN_LONG) >= 0){
+			writeLong(value.longValue());
+			return;
+		}
+		boolean negative = value.signum() < 0;
+		writeHead(MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+		byte[] bytes = (negative ? value.negate().subtract(BigInteger.ONE) : value).toByteArray();
+		// drop the sign byte
+		int offset = bytes[0] == 0 ? 1 : 0;
+		writeHead(MAJOR_BYTES, bytes.length - offset);
+		out.write(bytes, offset, bytes.length - offset);
+	}
+
+	/**
+	 * Writes the initial byte of a data item with its argument, in as few bytes as possible
+	 */
+	private void writeHead(int major, long argument) throws IOException {
+		int type = major << 5;
+		if(argument < 24)
+			out.write(type | (int) argument);
+		else if(argument < 0x100L){
+			out.write(type | 24);
+			out.write((int) argument);
+		}else if(argument < 0x10000L){
+			out.write(type | 25);
+			writeBytes(argument, 2);
+		}else if(argument < 0x100000000L){
+			out.write(type | 26);
+			writeBytes(argument, 4);
+		}else{
+			out.write(type | 27);
+			writeBytes(argument, 8);
+		}
+	}
+
+	private void writeBytes(long value, int count) throws IOException {
+		for(int i=0;i<count;i++)
+			buffer[i] = (byte) (value >>> (8 * (count - 1 - i)));
+		out.write(buffer, 0, count);
+	}
+}
@@ -48,4 +48,25 @@ public @interface CRUD {
 	 * A URL for collections of entities. Ex: /foo
 	 */
 	public String collection() default "";
+	/**
+	 * How reads of this resource are cached
+	 */
+	public CachePolicy cache() default CachePolicy.NONE;
+	/**
+	 * The Hibernate query cache region to use if {@link #cache()} is set. Defaults to one region per model,
+	 * named after the model class with a <tt>.queries</tt> suffix.
+	 */
+	public String cacheRegion() default "";
+	/**
+	 * The associations to load along with the entities this resource returns, so that marshalling them 
+	 * does not load them one entity at a time. See {@link FetchPlan}. Ignored for sparse fieldsets, and 
+	 * collections are not fetched for streamed lists.
+	 */
+	public String[] fetch() default {};
+	/**
+	 * Set to true to also produce and consume CBOR (<tt>application/cbor</tt>), a compact binary form of the 
+	 * JSON representation, in the generated list, get, add and edit methods. It comes after XML and JSON in 
+	 * content negotiation, so it is only used by clients that ask for it.
+	 */
+	public boolean cbor() default false;
 }
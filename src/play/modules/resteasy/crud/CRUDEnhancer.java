@@ -18,8 +18,10 @@
 */
 package play.modules.resteasy.crud;
 
+import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,12 +32,15 @@ import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtConstructor;
+import javassist.CtField;
 import javassist.CtMethod;
 import javassist.CtNewConstructor;
+import javassist.Modifier;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.ParameterAnnotationsAttribute;
+import javassist.bytecode.SignatureAttribute;
 import javassist.bytecode.annotation.AnnotationMemberValue;
 import javassist.bytecode.annotation.ArrayMemberValue;
 import javassist.bytecode.annotation.ClassMemberValue;
@@ -52,6 +57,7 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
@@ -75,6 +81,7 @@ import play.db.Model;
 import play.db.Model.Factory;
 import play.db.Model.Manager;
 import play.db.Model.Property;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
 
 /**
  * Enhance JAX-RS classes by giving them code if they don't already have them.
@@ -235,15 +242,22 @@ public class CRUDEnhancer extends Enhancer {
 			createAnnotation(annotations, LinkELProvider.class, map(cp, PlayELProvider.class));
 		}
 		String[] mediaTypes = new String[]{MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON};
+		// entities can also be CBOR, last so that content negotiation does not pick it for browsers
+		String[] entityMediaTypes = mediaTypes;
+		if(restCRUD.cbor())
+			entityMediaTypes = new String[]{MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, CBORWriter.APPLICATION_CBOR};
 		if(!hasAnnotation(ctClass, Produces.class)){
-			createAnnotation(annotations, Produces.class, map(cp, mediaTypes));
+			createAnnotation(annotations, Produces.class, map(cp, entityMediaTypes));
 		}
+		boolean streamingJSON = hasAnnotation(ctClass, StreamingJSON.class);
 
 		// list
 		Signature listSignature = new Signature(Response.class, "list", a(GET.class), a(AddLinks.class), 
 				a(Path.class, restCRUD.collection()),
 				linkResourceAnnotation(restCRUD.model(), "list", "select"));
 		listSignature.param(DataTableQuery.class, "q", a(Form.class));
+		if(streamingJSON)
+			listSignature.annotations.add(a(StreamingJSON.class));
 		
 		if(!hasMethod(ctClass, listSignature.name, listSignature.signature())){
 			CtMethod list = listSignature.method(ctClass, restCRUD.model());
@@ -255,6 +269,8 @@ public class CRUDEnhancer extends Enhancer {
 				a(Path.class, restCRUD.single()),
 				linkResourceAnnotation(restCRUD.model(), "self", "select"));
 		getSignature.param(idType, "id", a(PathParam.class, idName));
+		if(streamingJSON)
+			getSignature.annotations.add(a(StreamingJSON.class));
 		
 		if(!hasMethod(ctClass, getSignature.name, getSignature.signature())){
 			ctClass.addMethod(getSignature.method(ctClass, restCRUD.model()));
@@ -271,10 +287,19 @@ public class CRUDEnhancer extends Enhancer {
 			ctClass.addMethod(delete);
 		}
 
+		// delete by query
+		Signature deleteAllSignature = new Signature(Response.class, "deleteAll", a(DELETE.class),
+				a(Path.class, restCRUD.collection()));
+		deleteAllSignature.param(DataTableQuery.class, "q", a(Form.class));
+		
+		if(!hasMethod(ctClass, deleteAllSignature.name, deleteAllSignature.signature())){
+			ctClass.addMethod(deleteAllSignature.method(ctClass, restCRUD.model()));
+		}
+
 		// add
 		Signature addSignature = new Signature(Response.class, "add", a(POST.class),
 				a(Path.class, restCRUD.collection()),
-				a(Consumes.class, mediaTypes),
+				a(Consumes.class, entityMediaTypes),
 				linkResourceAnnotation(restCRUD.model(), "add", "insert"));
 		addSignature.param(restCRUD.model(), "elem", a(Validate.class));
 		addSignature.param(UriInfo.class, "uriInfo", a(Context.class));
@@ -287,7 +312,7 @@ public class CRUDEnhancer extends Enhancer {
 		// edit
 		Signature editSignature = new Signature(Response.class, "edit", a(PUT.class),
 				a(Path.class, restCRUD.single()),
-				a(Consumes.class, mediaTypes),
+				a(Consumes.class, entityMediaTypes),
 				linkResourceAnnotation(restCRUD.model(), "update", "update"));
 		editSignature.param(idType, "id", a(PathParam.class, idName));
 		editSignature.param(restCRUD.model(), "elem", a(Validate.class));
@@ -296,6 +321,55 @@ public class CRUDEnhancer extends Enhancer {
 			CtMethod edit = editSignature.method(ctClass, restCRUD.model());
 			ctClass.addMethod(edit);
 		}
+
+		// partial edit
+		Signature patchSignature = new Signature(Response.class, "patch", a(PATCH.class),
+				a(Path.class, restCRUD.single()),
+				a(Consumes.class, mediaTypes));
+		patchSignature.param(idType, "id", a(PathParam.class, idName));
+		patchSignature.param(String.class, "body");
+		patchSignature.param(HttpHeaders.class, "headers", a(Context.class));
+		
+		if(!hasMethod(ctClass, patchSignature.name, patchSignature.signature())){
+			ctClass.addMethod(patchSignature.method(ctClass, restCRUD.model()));
+		}
+
+		// batches
+		String batchPath = restCRUD.collection() + "/batch";
+		Signature addBatchSignature = new Signature(Response.class, "addBatch", a(POST.class),
+				a(Path.class, batchPath),
+				a(Consumes.class, mediaTypes));
+		addBatchSignature.param(List.class, "elems", a(Validate.class));
+		addBatchSignature.param(UriInfo.class, "uriInfo", a(Context.class));
+		
+		if(!hasMethod(ctClass, addBatchSignature.name, addBatchSignature.signature())){
+			CtMethod addBatch = addBatchSignature.method(ctClass, restCRUD.model());
+			setGenericSignature(addBatch, "(" + listSignature(restCRUD.model().getName()) 
+					+ "Ljavax/ws/rs/core/UriInfo;)Ljavax/ws/rs/core/Response;");
+			ctClass.addMethod(addBatch);
+		}
+
+		Signature editBatchSignature = new Signature(Response.class, "editBatch", a(PUT.class),
+				a(Path.class, batchPath),
+				a(Consumes.class, mediaTypes));
+		editBatchSignature.param(List.class, "items", a(Validate.class));
+		
+		if(!hasMethod(ctClass, editBatchSignature.name, editBatchSignature.signature())){
+			String batchItemClass = makeBatchItem(ctClass, restCRUD.model());
+			CtMethod editBatch = editBatchSignature.method(ctClass, restCRUD.model());
+			setGenericSignature(editBatch, "(" + listSignature(batchItemClass) + ")Ljavax/ws/rs/core/Response;");
+			ctClass.addMethod(editBatch);
+		}
+
+		Signature deleteBatchSignature = new Signature(Response.class, "deleteBatch", a(DELETE.class),
+				a(Path.class, batchPath));
+		deleteBatchSignature.param(List.class, "ids", a(QueryParam.class, "id"));
+		
+		if(!hasMethod(ctClass, deleteBatchSignature.name, deleteBatchSignature.signature())){
+			CtMethod deleteBatch = deleteBatchSignature.method(ctClass, restCRUD.model());
+			setGenericSignature(deleteBatch, "(" + listSignature(String.class.getName()) + ")Ljavax/ws/rs/core/Response;");
+			ctClass.addMethod(deleteBatch);
+		}
 		
 		// autocomplete
 		for(Property property : factory.listProperties()){
@@ -310,6 +384,8 @@ public class CRUDEnhancer extends Enhancer {
 						a(GET.class), a(Path.class, restCRUD.collection()+ "/auto-complete/"+fieldName),
 						linkResourceAnnotation(restCRUD.model(), "autocomplete/"+fieldName, "select"));
 				autoCompleteSignature.param(String.class, "q", a(QueryParam.class, "q"));
+				if(streamingJSON)
+					autoCompleteSignature.annotations.add(a(StreamingJSON.class));
 				
 				if(!hasMethod(ctClass, autoCompleteSignature.name, autoCompleteSignature.signature())){
 					CtMethod edit = CtMethod.make(autoCompleteSignature.decl() + " {"
@@ -340,6 +416,16 @@ public class CRUDEnhancer extends Enhancer {
 		if(!hasMethod(ctClass, makeDataTableSignature.name, makeDataTableSignature.signature())){
 			makeDataTable(ctClass, makeDataTableSignature, restCRUD.model());
 		}
+
+		Signature copierSignature = new Signature(PropertyCopier.class, "getPropertyCopier");
+		copierSignature.param(Class.class, "model");
+		CRUDModel crudModel = CRUDModel.get(restCRUD.model());
+		if(!hasMethod(ctClass, copierSignature.name, copierSignature.signature())){
+			if(PropertyCopier.canGenerate(crudModel))
+				makePropertyCopier(ctClass, copierSignature, crudModel);
+			else
+				Logger.debug("Not every field of %s is public, property copies will use reflection", restCRUD.model().getName());
+		}
 		
 		// Done.
 		applicationClass.enhancedByteCode = ctClass.toBytecode();
@@ -402,6 +488,96 @@ public class CRUDEnhancer extends Enhancer {
 		ctClass.addMethod(method);
 }
 
+	private String makeBatchItem(CtClass ctClass, Class<? extends Model> modelClass) throws Exception {
+		// we need the class itself, so that JAXB knows about the model
+		CtClass batchItemClass = ctClass.makeNestedClass("__BatchItem", true);
+		ClassPool cp = ctClass.getClassPool();
+		batchItemClass.setSuperclass(cp.get(BatchItem.class.getName()));
+		batchItemClass.addConstructor(CtNewConstructor.defaultConstructor(batchItemClass));
+
+		ConstPool constPool = batchItemClass.getClassFile().getConstPool();
+		AnnotationsAttribute annotations = getAnnotations(batchItemClass);
+		createAnnotation(annotations, XmlType.class, map(constPool, "namespace", batchItemClass.getName()));
+		createAnnotation(annotations, XmlRootElement.class, map(constPool, "name", "item"));
+		createAnnotation(annotations, XmlSeeAlso.class, map(constPool, new Object[]{modelClass}));
+
+		// and give the whole class to play
+		ApplicationClass batchItemApplicationClass = new ApplicationClass(batchItemClass.getName());
+		batchItemApplicationClass.compiled(batchItemClass.toBytecode());
+		batchItemClass.defrost();
+		Play.classes.add(batchItemApplicationClass);
+		return batchItemClass.getName();
+	}
+
+	private static void setGenericSignature(CtMethod method, String signature) {
+		ConstPool cp = method.getMethodInfo().getConstPool();
+		method.getMethodInfo().addAttribute(new SignatureAttribute(cp, signature));
+	}
+
+	private static String listSignature(String elementClass) {
+		return "Ljava/util/List<L" + elementClass.replace('.', '/') + ";>;";
+	}
+
+	private void makePropertyCopier(CtClass ctClass, Signature copierSignature, CRUDModel crudModel) 
+	throws Exception {
+		// we need the class itself
+		CtClass copierClass = ctClass.makeNestedClass("__PropertyCopier", true);
+		ClassPool cp = ctClass.getClassPool();
+
+		// its superclass
+		copierClass.setSuperclass(cp.get(PropertyCopier.class.getName()));
+		copierClass.addConstructor(CtNewConstructor.defaultConstructor(copierClass));
+
+		// now build the methods with direct access, through the accessors when there are some
+		Map<String, PropertyDescriptor> accessors = PropertyCopier.getAccessors(crudModel);
+		String model = t(crudModel.model);
+		StringBuilder check = new StringBuilder("public String findNonEmptyReadOnlyProperty(Object o){ ");
+		check.append(model).append(" elem = (").append(model).append(")o;");
+		StringBuilder copy = new StringBuilder("public void copyEditableProperties(Object f, Object t){ ");
+		copy.append(model).append(" from = (").append(model).append(")f;");
+		copy.append(model).append(" to = (").append(model).append(")t;");
+		for(CRUDProperty property : crudModel.properties){
+			String field = property.field.getName();
+			PropertyDescriptor descriptor = accessors.get(property.name);
+			Method getter = descriptor != null ? descriptor.getReadMethod() : null;
+			Method setter = descriptor != null ? descriptor.getWriteMethod() : null;
+			if(property.isEditable()){
+				String value = getter != null ? "from."+getter.getName()+"()" : "from."+field;
+				if(setter != null)
+					copy.append("to.").append(setter.getName()).append("(").append(value).append(");");
+				else
+					copy.append("to.").append(field).append(" = ").append(value).append(";");
+			}else{
+				String value = getter != null ? "elem."+getter.getName()+"()" : "elem."+field;
+				// primitives are boxed so they are never empty, like with bean properties
+				check.append("if(!").append(t(PropertyCopier.class)).append(".isEmpty(($w)").append(value).append("))");
+				check.append(" return \"").append(property.name).append("\";");
+			}
+		}
+		check.append(" return null; }");
+		copy.append(" }");
+		copierClass.addMethod(CtMethod.make(check.toString(), copierClass));
+		copierClass.addMethod(CtMethod.make(copy.toString(), copierClass));
+
+		// it is stateless so we only need one
+		CtField instance = new CtField(copierClass, "INSTANCE", copierClass);
+		instance.setModifiers(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+		copierClass.addField(instance, CtField.Initializer.byNew(copierClass));
+
+		// and give the whole class to play
+		ApplicationClass copierApplicationClass = new ApplicationClass(copierClass.getName());
+		copierApplicationClass.compiled(copierClass.toBytecode());
+		copierClass.defrost();
+		Play.classes.add(copierApplicationClass);
+
+		// now build the method's body
+		StringBuilder ret = new StringBuilder(copierSignature.decl());
+		ret.append("{ if(model == ").append(model).append(".class) return ").append(copierClass.getName()).append(".INSTANCE;");
+		ret.append(" return super.").append(copierSignature.name).append("(model); }");
+		CtMethod method = CtMethod.make(ret.toString(), ctClass);
+		ctClass.addMethod(method);
+	}
+
 	private AnnotationRef<?> linkResourceAnnotation(
 			Class<? extends Model> model, String rel, String permission) {
 		return a(LinkResource.class, model).p("rel", rel)
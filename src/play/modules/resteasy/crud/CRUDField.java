@@ -42,6 +42,22 @@ public @interface CRUDField {
 	 * Set to true if the field should be searched for when the user searches for entries
 	 */
 	public boolean searchable() default false;
+	/**
+	 * How this field is matched when searching, defaults to {@link SearchMode#CONTAINS}. Pick a mode that
+	 * your indexes can serve if your tables are large. Every mode but {@link SearchMode#CONTAINS} and 
+	 * {@link SearchMode#FULLTEXT} is only allowed on String fields.
+	 */
+	public SearchMode search() default SearchMode.CONTAINS;
+	/**
+	 * The HQL predicate to use when {@link #search()} is {@link SearchMode#FULLTEXT}. Use {field} for the field
+	 * name and :_search for the search string.
+	 */
+	public String searchPredicate() default "";
+	/**
+	 * Set to true if the list of entities can be filtered on this field, see {@link Filter}. Only fields
+	 * of a simple type, enums and booleans can be filterable.
+	 */
+	public boolean filterable() default false;
 	/**
 	 * Set to true if the field is user-editable
 	 */
@@ -54,6 +70,11 @@ public @interface CRUDField {
 	 * Set to true if we should produce autocomplete resources for this field
 	 */
 	public boolean autoComplete() default false;
+	/**
+	 * Set to true to answer autocomplete queries for this String field from an in-memory index of its 
+	 * distinct values rather than from the database. See {@link AutoCompleteIndex}.
+	 */
+	public boolean autoCompleteIndex() default false;
 	/**
 	 * Set to something else than Type.DEFAULT to override the field type, otherwise it is implied from the 
 	 * entity's field type.
@@ -0,0 +1,71 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+/**
+ * Receives timings and counters from the CRUD endpoints. Implement this in your application to send them to 
+ * your metrics system: the first implementation found is used (see {@link Metrics}), otherwise they are
+ * logged at DEBUG level.
+ * <p>
+ * Endpoints are the names of the {@link RESTResource} methods, such as "list" or "get". Permission checks
+ * are reported as {@link #PERMISSION} timings with the permission name as endpoint.
+ * </p>
+ * Implementations are called on every request and must be thread-safe and fast.
+ */
+public interface CRUDMetrics {
+
+	/**
+	 * Time spent running the query for the entities
+	 */
+	public static final String QUERY = "query";
+	/**
+	 * Time spent counting the entities
+	 */
+	public static final String COUNT = "count";
+	/**
+	 * Time spent marshalling the response
+	 */
+	public static final String MARSHAL = "marshal";
+	/**
+	 * Time spent checking a permission
+	 */
+	public static final String PERMISSION = "permission";
+	/**
+	 * Number of entities returned
+	 */
+	public static final String ROWS = "rows";
+
+	/**
+	 * Records a timing
+	 * @param endpoint the endpoint name
+	 * @param model the model type
+	 * @param timer the timer name, such as {@link #QUERY}
+	 * @param nanos the time, in nanoseconds
+	 */
+	public void time(String endpoint, Class<?> model, String timer, long nanos);
+
+	/**
+	 * Records a counter value
+	 * @param endpoint the endpoint name
+	 * @param model the model type
+	 * @param counter the counter name, such as {@link #ROWS}
+	 * @param value the value to add to the counter
+	 */
+	public void count(String endpoint, Class<?> model, String counter, long value);
+}
@@ -0,0 +1,367 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.beans.Introspector;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.CascadeType;
+import javax.persistence.EntityListeners;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToOne;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PreRemove;
+import javax.persistence.PreUpdate;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.hibernate.validator.ClassValidator;
+import org.hibernate.validator.ValidatorClass;
+
+import play.db.Model;
+import play.db.Model.Factory;
+import play.db.Model.Manager;
+import play.db.Model.Property;
+
+/**
+ * Precomputed CRUD metadata for a model type. This is built once per model on first use and is
+ * immutable afterwards. It is dropped by {@link CRUDPlugin} when the application is (re)started
+ * so that hot-reloaded classes get fresh metadata.
+ */
+public class CRUDModel {
+
+	private static final Map<Class<?>, CRUDModel> models = new ConcurrentHashMap<Class<?>, CRUDModel>();
+
+	/**
+	 * Gets the CRUD metadata for the given model, building it if required
+	 * @param model the model type
+	 * @return the model metadata
+	 */
+	public static CRUDModel get(Class<? extends Model> model) {
+		CRUDModel ret = models.get(model);
+		if(ret == null){
+			// we don't care if two threads build it at the same time, they will be equivalent
+			ret = new CRUDModel(model);
+			models.put(model, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Forgets every model metadata, called when the application is reloaded
+	 */
+	public static void clear() {
+		models.clear();
+	}
+
+	/**
+	 * A single model property along with its CRUD settings
+	 */
+	public static class CRUDProperty {
+		/**
+		 * The property name
+		 */
+		public final String name;
+		/**
+		 * The Play property
+		 */
+		public final Property property;
+		/**
+		 * The underlying field
+		 */
+		public final Field field;
+		/**
+		 * The CRUD settings, or null if this property is not handled by the CRUD module
+		 */
+		public final CRUDField crud;
+		/**
+		 * The type inferred from the field's Java type, or null if it cannot be represented
+		 */
+		public final Type fieldType;
+		/**
+		 * The field type as specified by {@link CRUDField#type()} if present, otherwise the inferred type
+		 */
+		public final Type type;
+		/**
+		 * The name of the XML element or attribute (and JSON key) this property is mapped to by JAXB
+		 */
+		public final String xmlName;
+
+		CRUDProperty(Property property) {
+			this.property = property;
+			this.name = property.name;
+			this.field = property.field;
+			this.xmlName = getXmlName(field);
+			this.crud = field.getAnnotation(CRUDField.class);
+			this.fieldType = Type.forClass(field.getType());
+			if(crud != null && crud.type() != Type.DEFAULT)
+				this.type = crud.type();
+			else
+				this.type = fieldType;
+		}
+
+		/**
+		 * @return true if this property is handled by the CRUD module and is user-editable
+		 */
+		public boolean isEditable() {
+			return crud != null && crud.editable();
+		}
+
+		private static String getXmlName(Field field) {
+			XmlElement element = field.getAnnotation(XmlElement.class);
+			if(element != null && !"##default".equals(element.name()))
+				return element.name();
+			XmlAttribute attribute = field.getAnnotation(XmlAttribute.class);
+			if(attribute != null && !"##default".equals(attribute.name()))
+				return attribute.name();
+			return field.getName();
+		}
+	}
+
+	/**
+	 * The model type
+	 */
+	public final Class<? extends Model> model;
+	/**
+	 * The model factory
+	 */
+	public final Factory factory;
+	/**
+	 * Every property of the model, in the order given by the model factory
+	 */
+	public final List<CRUDProperty> properties;
+	/**
+	 * The names of the sortable properties
+	 */
+	public final Set<String> sortable;
+	/**
+	 * The names of the searchable properties
+	 */
+	public final Set<String> searchable;
+	/**
+	 * The names of the filterable properties
+	 */
+	public final Set<String> filterable;
+	/**
+	 * The names of the editable properties
+	 */
+	public final Set<String> editable;
+	/**
+	 * The String properties with an autocomplete index
+	 */
+	public final List<CRUDProperty> autoCompleteIndexed;
+	/**
+	 * A property copier that uses reflection, for resources that have no generated one
+	 */
+	public final PropertyCopier copier;
+	/**
+	 * True if deleting entities of this model with an HQL DELETE is equivalent to deleting them one by one: 
+	 * the model has no collections, no association that cascades deletes, and no remove callbacks or entity 
+	 * listeners, which an HQL DELETE would skip
+	 */
+	public final boolean bulkDeletable;
+	/**
+	 * The name of the root XML element (and JSON key) JAXB uses for this model
+	 */
+	public final String xmlName;
+	/**
+	 * The field annotated with {@link Version}, or null if the model is not versioned
+	 */
+	public final Field version;
+	/**
+	 * True if updating entities of this model with an HQL UPDATE is equivalent to updating them one by one: 
+	 * the model has no update callbacks or entity listeners, and no Hibernate Validator constraint on the 
+	 * class itself, which would need the whole entity to be checked
+	 */
+	public final boolean bulkUpdatable;
+
+	private final Map<String, CRUDProperty> propertiesByName;
+	private final Map<String, CRUDProperty> propertiesByXmlName;
+	private volatile ClassValidator<?> validator;
+
+	private CRUDModel(Class<? extends Model> model) {
+		this.model = model;
+		this.factory = Manager.factoryFor(model);
+		List<CRUDProperty> properties = new ArrayList<CRUDProperty>();
+		Map<String, CRUDProperty> propertiesByName = new HashMap<String, CRUDProperty>();
+		Map<String, CRUDProperty> propertiesByXmlName = new HashMap<String, CRUDProperty>();
+		Set<String> sortable = new HashSet<String>();
+		Set<String> searchable = new HashSet<String>();
+		Set<String> filterable = new HashSet<String>();
+		Set<String> editable = new HashSet<String>();
+		List<CRUDProperty> autoCompleteIndexed = new ArrayList<CRUDProperty>();
+		for(Property prop : factory.listProperties()){
+			CRUDProperty property = new CRUDProperty(prop);
+			properties.add(property);
+			propertiesByName.put(property.name, property);
+			propertiesByXmlName.put(property.xmlName, property);
+			if(property.crud == null)
+				continue;
+			if(property.crud.sortable())
+				sortable.add(property.name);
+			if(property.crud.searchable()){
+				if(!property.crud.search().supports(property.field.getType()))
+					throw new RuntimeException("Field cannot be searched with "+property.crud.search()+": "
+							+model.getName()+"."+property.name);
+				searchable.add(property.name);
+			}
+			if(property.crud.filterable()){
+				if(!Filter.isFilterable(property))
+					throw new RuntimeException("Field cannot be filterable: "+model.getName()+"."+property.name);
+				filterable.add(property.name);
+			}
+			if(property.crud.editable())
+				editable.add(property.name);
+			if(property.crud.autoComplete() && property.crud.autoCompleteIndex() 
+					&& property.field.getType() == String.class){
+				property.field.setAccessible(true);
+				autoCompleteIndexed.add(property);
+			}
+		}
+		this.properties = Collections.unmodifiableList(properties);
+		this.propertiesByName = propertiesByName;
+		this.propertiesByXmlName = propertiesByXmlName;
+		this.sortable = Collections.unmodifiableSet(sortable);
+		this.searchable = Collections.unmodifiableSet(searchable);
+		this.filterable = Collections.unmodifiableSet(filterable);
+		this.editable = Collections.unmodifiableSet(editable);
+		this.autoCompleteIndexed = Collections.unmodifiableList(autoCompleteIndexed);
+		this.copier = new PropertyCopier.ReflectionCopier(this);
+		this.bulkDeletable = isBulkDeletable(model);
+		XmlRootElement root = model.getAnnotation(XmlRootElement.class);
+		if(root != null && !"##default".equals(root.name()))
+			this.xmlName = root.name();
+		else
+			this.xmlName = Introspector.decapitalize(model.getSimpleName());
+		this.version = findVersion(model);
+		this.bulkUpdatable = isBulkUpdatable(model);
+	}
+
+	private static Field findVersion(Class<?> model) {
+		for(Class<?> type = model; type != null && type != Object.class; type = type.getSuperclass()){
+			for(Field field : type.getDeclaredFields()){
+				if(field.isAnnotationPresent(Version.class)){
+					field.setAccessible(true);
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isBulkUpdatable(Class<?> model) {
+		for(Class<?> type = model; type != null && type != Object.class; type = type.getSuperclass()){
+			if(type.isAnnotationPresent(EntityListeners.class))
+				return false;
+			for(Annotation annotation : type.getDeclaredAnnotations()){
+				if(annotation.annotationType().isAnnotationPresent(ValidatorClass.class))
+					return false;
+			}
+			for(Method method : type.getDeclaredMethods()){
+				if(method.isAnnotationPresent(PreUpdate.class)
+						|| method.isAnnotationPresent(PostUpdate.class))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isBulkDeletable(Class<?> model) {
+		for(Class<?> type = model; type != null && type != Object.class; type = type.getSuperclass()){
+			if(type.isAnnotationPresent(EntityListeners.class))
+				return false;
+			for(Method method : type.getDeclaredMethods()){
+				if(method.isAnnotationPresent(PreRemove.class)
+						|| method.isAnnotationPresent(PostRemove.class))
+					return false;
+			}
+			for(Field field : type.getDeclaredFields()){
+				if(Modifier.isStatic(field.getModifiers())
+						|| Modifier.isTransient(field.getModifiers())
+						|| field.isAnnotationPresent(Transient.class))
+					continue;
+				// HQL deletes do not clean up collection tables
+				if(Collection.class.isAssignableFrom(field.getType())
+						|| Map.class.isAssignableFrom(field.getType()))
+					return false;
+				OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+				if(oneToOne != null && (oneToOne.orphanRemoval() || cascadesRemove(oneToOne.cascade())))
+					return false;
+				ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+				if(manyToOne != null && cascadesRemove(manyToOne.cascade()))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean cascadesRemove(CascadeType[] cascade) {
+		List<CascadeType> types = Arrays.asList(cascade);
+		return types.contains(CascadeType.ALL) || types.contains(CascadeType.REMOVE);
+	}
+
+	/**
+	 * Gets a property by name
+	 * @param name the property name
+	 * @return the property, or null if there is no such property
+	 */
+	public CRUDProperty getProperty(String name) {
+		return propertiesByName.get(name);
+	}
+
+	/**
+	 * Gets a property by the name JAXB maps it to
+	 * @param xmlName the XML element or attribute name
+	 * @return the property, or null if there is no such property
+	 */
+	public CRUDProperty getPropertyByXmlName(String xmlName) {
+		return propertiesByXmlName.get(xmlName);
+	}
+
+	/**
+	 * Gets the Hibernate Validator for this model, which is only created when first needed
+	 * @return the validator
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public ClassValidator<?> getValidator() {
+		ClassValidator<?> ret = validator;
+		if(ret == null){
+			ret = new ClassValidator(model);
+			validator = ret;
+		}
+		return ret;
+	}
+}
@@ -25,7 +25,7 @@ import play.PlayPlugin;
 import play.classloading.ApplicationClasses.ApplicationClass;
 
 /**
- * Enhances RESTResource classes
+ * Enhances RESTResource classes and resets the CRUD caches when the application is reloaded
  * 
  * @author Stéphane Épardaud <stef@epardaud.fr>
  */
@@ -36,4 +36,29 @@ public class CRUDPlugin extends PlayPlugin {
     	new CRUDEnhancer().enhanceThisClass(applicationClass);
     }
 
+    @Override
+    public void onApplicationStart() {
+    	CRUDModel.clear();
+    	RESTResource.Descriptor.clearCache();
+    	CountCache.clear();
+    	PagedQuery.clearCache();
+    	FetchPlan.clear();
+    	ResponseCache.clear();
+    	AutoCompleteIndex.clear();
+    	CRUDSecure.reset();
+    	Metrics.reset();
+    	JAXBWalker.clear();
+    	StreamingJSONWriter.reset();
+    }
+
+    @Override
+    public void beforeInvocation() {
+    	CRUDSecure.startRequest();
+    }
+
+    @Override
+    public void invocationFinally() {
+    	CRUDSecure.endRequest();
+    }
+
 }
@@ -2,21 +2,169 @@ package play.modules.resteasy.crud;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import play.Logger;
 import play.Play;
-import play.utils.Java;
+import play.db.Model;
+import play.db.jpa.JPA;
 
 public class CRUDSecure {
 	
+	private static volatile Method[] methods;
+	private static volatile Boolean requestCacheEnabled;
+	private static volatile Boolean instancePermissions;
+	private static final ThreadLocal<Map<PermissionKey, Boolean>> requestCache = new ThreadLocal<Map<PermissionKey, Boolean>>();
+
 	public static boolean hasPermission(Object target, String permission){
-		return (Boolean) CRUDSecurity.invoke("hasPermission", target, permission);
+		Map<PermissionKey, Boolean> cache = requestCache.get();
+		PermissionKey key = cache != null ? PermissionKey.of(target, permission) : null;
+		if(key == null)
+			return (Boolean) CRUDSecurity.invoke("hasPermission", target, permission);
+		Boolean ret = cache.get(key);
+		if(ret == null){
+			ret = (Boolean) CRUDSecurity.invoke("hasPermission", target, permission);
+			cache.put(key, ret);
+		}
+		return ret;
 	}
 	
 	public static boolean hasRole(String role){
 		return (Boolean) CRUDSecurity.invoke("hasRole", role);
 	}
 
+	/**
+	 * Gets the hasPermission or hasRole method of the CRUDSecurity implementation. These are only looked up once, 
+	 * until {@link #reset()} is called.
+	 * @param m the method name
+	 * @return the method
+	 * @throws NoSuchMethodException if there is no such method
+	 */
+	public static Method getMethod(String m) throws NoSuchMethodException {
+		Method[] methods = CRUDSecure.methods;
+		if(methods == null){
+			methods = lookupMethods();
+			CRUDSecure.methods = methods;
+		}
+		if(m.equals("hasPermission"))
+			return methods[0];
+		if(m.equals("hasRole"))
+			return methods[1];
+		throw new NoSuchMethodException("No such method: "+m);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Method[] lookupMethods() throws NoSuchMethodException {
+		Class<?> security = null;
+		List<Class> classes = Play.classloader.getAssignableClasses(CRUDSecurity.class);
+		if(classes.size() == 0) {
+			Logger.warn("No CRUDSecurity implementation found, all security checks will be denied");
+			security = CRUDSecurity.class;
+		} else {
+			security = classes.get(0);
+		}
+		try{
+			return new Method[]{
+					security.getMethod("hasPermission", Object.class, String.class),
+					security.getMethod("hasRole", String.class)
+			};
+		}catch(NoSuchMethodException e){
+			Logger.warn("Missing function in your CRUDSecurity subclass: "+e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * Forgets the CRUDSecurity implementation and configuration, called when the application is reloaded
+	 */
+	public static void reset() {
+		methods = null;
+		requestCacheEnabled = null;
+		instancePermissions = null;
+	}
+
+	/**
+	 * Checks if permissions depend on the entity instance, or only on its class. This is true unless
+	 * <code>resteasy.crud.security.instance</code> is set to false, in which case operations on many entities
+	 * only check their permission once, on the model class.
+	 */
+	public static boolean hasInstancePermissions() {
+		Boolean ret = instancePermissions;
+		if(ret == null){
+			ret = Boolean.valueOf(Play.configuration.getProperty("resteasy.crud.security.instance", "true"));
+			instancePermissions = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Starts caching permission checks for the current request, if <code>resteasy.crud.security.requestCache</code>
+	 * is enabled. Permissions are cached per entity class and key, or per class for general permissions. Only 
+	 * checks on managed entities are cached, since the state of new or detached ones, such as request bodies, 
+	 * is not tied to their key.
+	 */
+	public static void startRequest() {
+		Boolean enabled = requestCacheEnabled;
+		if(enabled == null){
+			enabled = Boolean.valueOf(Play.configuration.getProperty("resteasy.crud.security.requestCache", "false"));
+			requestCacheEnabled = enabled;
+		}
+		if(enabled)
+			requestCache.set(new HashMap<PermissionKey, Boolean>());
+	}
+
+	/**
+	 * Stops caching permission checks for the current request
+	 */
+	public static void endRequest() {
+		requestCache.remove();
+	}
+
+	static class PermissionKey {
+		private final Class<?> type;
+		private final Object id;
+		private final String permission;
+
+		private PermissionKey(Class<?> type, Object id, String permission) {
+			this.type = type;
+			this.id = id;
+			this.permission = permission;
+		}
+
+		/**
+		 * @return a key for the given permission check, or null if it cannot be cached
+		 */
+		static PermissionKey of(Object target, String permission) {
+			if(target instanceof Class)
+				return new PermissionKey((Class<?>) target, null, permission);
+			// request bodies can carry any key with any state
+			if(target instanceof Model && JPA.isEnabled() && JPA.em().contains(target)){
+				Object id = ((Model) target)._key();
+				if(id != null)
+					return new PermissionKey(target.getClass(), id, permission);
+			}
+			return null;
+		}
+
+		@Override
+		public int hashCode() {
+			int ret = type.hashCode() * 31 + permission.hashCode();
+			return id != null ? ret * 31 + id.hashCode() : ret;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof PermissionKey))
+				return false;
+			PermissionKey other = (PermissionKey) obj;
+			return type == other.type
+				&& permission.equals(other.permission)
+				&& (id == null ? other.id == null : id.equals(other.id));
+		}
+	}
+
 	public static class CRUDSecurity {
 		public static boolean hasPermission(Object target, String permission){
 			return false;
@@ -27,22 +175,8 @@ public class CRUDSecure {
 		}
 
 		public static Object invoke(String m, Object... args) {
-            Class<?> security = null;
-            List<Class> classes = Play.classloader.getAssignableClasses(CRUDSecurity.class);
-            if(classes.size() == 0) {
-                security = CRUDSecurity.class;
-            } else {
-                security = classes.get(0);
-            }
             try {
-            	Method method;
-            	if(m.equals("hasPermission"))
-            		method = security.getMethod(m, Object.class, String.class);
-            	else if(m.equals("hasRole"))
-            		method = security.getMethod(m, String.class);
-            	else
-            		throw new NoSuchMethodException("No such method: "+m);
-            	return method.invoke(null, args);
+            	return getMethod(m).invoke(null, args);
             } catch(InvocationTargetException e) {
             	if(e.getTargetException() instanceof RuntimeException)
             		throw (RuntimeException)e.getTargetException();
@@ -0,0 +1,41 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+/**
+ * Specifies how the reads of a CRUD resource are cached, see {@link CRUD#cache()}.
+ */
+public enum CachePolicy {
+	/**
+	 * No caching
+	 */
+	NONE,
+	/**
+	 * List, count and version queries use the Hibernate query cache, in the region given by 
+	 * {@link CRUD#cacheRegion()}, which is evicted after every write through the resource. This requires 
+	 * <tt>hibernate.cache.use_query_cache</tt>, and entities are only served from the second-level cache if
+	 * the model is mapped as cacheable.
+	 */
+	QUERY,
+	/**
+	 * Like {@link #QUERY}, and list pages are also cached marshalled in the {@link ResponseCache}, unless 
+	 * permissions depend on entity instances (see {@link CRUDSecure#hasInstancePermissions()}).
+	 */
+	RESPONSE;
+}
@@ -0,0 +1,122 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Play;
+import play.libs.Time;
+
+/**
+ * Short-lived cache of list counts, keyed by model and count query. Entries expire after the duration set by
+ * <code>resteasy.crud.count.ttl</code> (for example <code>10s</code>), and every entry for a model is dropped 
+ * when that model is written to through a CRUD resource. The cache is disabled if no TTL is configured.
+ */
+public class CountCache {
+
+	/**
+	 * Maximum number of counts we remember per model
+	 */
+	public static final int MAX_ENTRIES_PER_MODEL = 1000;
+
+	private static final Map<String, Map<String, Entry>> counts = new ConcurrentHashMap<String, Map<String, Entry>>();
+
+	private static volatile long ttl = -1;
+
+	private static class Entry {
+		final long count;
+		final long expires;
+
+		Entry(long count, long expires) {
+			this.count = count;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * @return true if a TTL is configured
+	 */
+	public static boolean isEnabled() {
+		return getTTL() > 0;
+	}
+
+	/**
+	 * Gets a cached count
+	 * @param model the model type
+	 * @param key the count query key, see {@link PagedQuery#getCountKey()}
+	 * @return the count if it is cached and has not expired, or null
+	 */
+	public static Long get(Class<?> model, String key) {
+		Map<String, Entry> modelCounts = counts.get(model.getName());
+		if(modelCounts == null)
+			return null;
+		Entry entry = modelCounts.get(key);
+		if(entry == null)
+			return null;
+		if(entry.expires < System.currentTimeMillis()){
+			modelCounts.remove(key);
+			return null;
+		}
+		return entry.count;
+	}
+
+	/**
+	 * Caches a count, if the cache is enabled
+	 * @param model the model type
+	 * @param key the count query key, see {@link PagedQuery#getCountKey()}
+	 * @param count the count
+	 */
+	public static void put(Class<?> model, String key, long count) {
+		long ttl = getTTL();
+		if(ttl <= 0)
+			return;
+		Map<String, Entry> modelCounts = counts.get(model.getName());
+		if(modelCounts == null){
+			modelCounts = new ConcurrentHashMap<String, Entry>();
+			counts.put(model.getName(), modelCounts);
+		}else if(modelCounts.size() >= MAX_ENTRIES_PER_MODEL)
+			modelCounts.clear();
+		modelCounts.put(key, new Entry(count, System.currentTimeMillis() + ttl));
+	}
+
+	/**
+	 * Forgets every count for the given model, called when it is written to
+	 * @param model the model type
+	 */
+	public static void invalidate(Class<?> model) {
+		counts.remove(model.getName());
+	}
+
+	/**
+	 * Forgets every count and reloads the configuration, called when the application is reloaded
+	 */
+	public static void clear() {
+		counts.clear();
+		ttl = -1;
+	}
+
+	private static long getTTL() {
+		if(ttl == -1){
+			String duration = Play.configuration.getProperty("resteasy.crud.count.ttl");
+			ttl = duration == null ? 0 : Time.parseDuration(duration) * 1000L;
+		}
+		return ttl;
+	}
+}
@@ -57,6 +57,24 @@ import org.jboss.resteasy.links.ResourceFacade;
                         @XmlNsMap(namespace = "http://www.w3.org/2005/Atom", jsonName = "atom") })
 public class DataTable<T> implements ResourceFacade<T> {
 
+  /**
+   * How the size of a DataTable was obtained
+   */
+  public enum SizeType {
+    /**
+     * The size was counted
+     */
+    EXACT,
+    /**
+     * The size is an estimate
+     */
+    ESTIMATED,
+    /**
+     * The size was not counted and should be ignored
+     */
+    OMITTED;
+  }
+
   @XmlElementRef
   private RESTServiceDiscovery rest;
 
@@ -69,12 +87,18 @@ public class DataTable<T> implements ResourceFacade<T> {
   @XmlElement
   private long size;
 
+  @XmlElement
+  private SizeType sizeType = SizeType.EXACT;
+
   @XmlElement(name = "rows")
   private List<T> rows = new ArrayList<T>();
 
   @XmlElement
   private Object oob;
 
+  @XmlElement
+  private String next;
+
   private Class<T> type;
 
   private UriInfo uriInfo;
@@ -100,6 +124,20 @@ public class DataTable<T> implements ResourceFacade<T> {
     return type;
   }
 
+  /**
+   * Checks if the rows of this page are a {@link StreamedList}, loaded as they are marshalled
+   */
+  public boolean isStreamed() {
+    return rows instanceof StreamedList;
+  }
+
+  /**
+   * Gets the out-of-band object of this page, if any
+   */
+  public Object getOob() {
+    return oob;
+  }
+
   public Map<String, ? extends Object> pathParameters() {
 	  MultivaluedMap<String, String> pathParameters = uriInfo.getPathParameters();
 	  Map<String, String> ret = new HashMap<String,String>();
@@ -112,6 +150,20 @@ public class DataTable<T> implements ResourceFacade<T> {
   public void addPermission(String permission) {
     permissions.add(permission);
   }
+
+  /**
+   * Sets how the size was obtained
+   */
+  public void setSizeType(SizeType sizeType) {
+    this.sizeType = sizeType;
+  }
+
+  /**
+   * Sets the keyset paging cursor for the next page
+   */
+  public void setNext(String next) {
+    this.next = next;
+  }
   
   public String toString(){
 	  return "DataTable["
@@ -119,7 +171,9 @@ public class DataTable<T> implements ResourceFacade<T> {
 	  +"facadeFor: "+type.getName()+", "
 	  +"rows: "+rows+", "
 	  +"size: "+size+", "
+	  +"sizeType: "+sizeType+", "
 	  +"oob: "+oob+", "
+	  +"next: "+next+", "
 	  +"]";
   }
 }
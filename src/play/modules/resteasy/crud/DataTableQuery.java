@@ -18,6 +18,8 @@
 */
 package play.modules.resteasy.crud;
 
+import java.util.List;
+
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
@@ -49,12 +51,54 @@ public class DataTableQuery {
 	@QueryParam("sort")
 	public String sort;
 	
+	/**
+	 * Keyset paging cursor, as returned in the "next" element of a previous response. When this is present
+	 * (even empty, for the first page) we page by sort key values rather than by offset, and start is ignored.
+	 */
+	@QueryParam("after")
+	public String after;
+	
 	/**
 	 * String to search for in all searcheable fields, to filter results
 	 */
 	@QueryParam("search")
 	public String search;
 	
+	/**
+	 * Conditions the results must all match, each as &lt;fieldName&gt;:&lt;operator&gt;:&lt;value&gt;, on 
+	 * filterable fields. The operators are eq, ne, lt, gt, in, between, isnull and prefix. See {@link Filter}.
+	 */
+	@QueryParam("filter")
+	public List<String> filter;
+	
+	/**
+	 * How to compute the total size of the list: "exact" (the default) counts the rows, "estimate" uses a
+	 * recently cached count or a lower bound computed from this page, and "none" skips the count altogether.
+	 */
+	@QueryParam("count")
+	@DefaultValue(COUNT_EXACT)
+	public String count;
+	
+	public static final String COUNT_EXACT = "exact";
+	public static final String COUNT_ESTIMATE = "estimate";
+	public static final String COUNT_NONE = "none";
+	
+	/**
+	 * Set to true to load the rows from the database as they are written to the response, rather than all
+	 * at once. Use this for exports and large lengths. The "next" keyset paging cursor is not available
+	 * when streaming. Defaults to false.
+	 */
+	@QueryParam("stream")
+	public boolean stream;
+	
+	/**
+	 * Comma-separated list of the properties to return, to get sparse entities rather than whole ones. The
+	 * entity key is always returned. Primitive properties must be listed, since they cannot be left out, and 
+	 * models with primitive properties that cannot be selected do not support this. Defaults to every property.
+	 */
+	@QueryParam("fields")
+	public String fields;
+	
 	/**
 	 * This has to be returned as-is in the response
 	 */
@@ -69,4 +113,34 @@ public class DataTableQuery {
 	
 	@Context
 	public UriInfo uriInfo;
+
+	/**
+	 * Gets a key made of every parameter that changes the response, except the echo value, 
+	 * for {@link ResponseCache}
+	 */
+	public String getCacheKey() {
+		StringBuilder key = new StringBuilder();
+		key.append("start=").append(start);
+		key.append("&length=").append(length);
+		appendParameter(key, "sort", sort);
+		appendParameter(key, "after", after);
+		appendParameter(key, "search", search);
+		if(filter != null){
+			for(String value : filter)
+				appendParameter(key, "filter", value);
+		}
+		appendParameter(key, "count", count != null ? count.toLowerCase() : null);
+		appendParameter(key, "fields", fields);
+		key.append("&stream=").append(stream);
+		key.append("&echo=").append(echo != null);
+		key.append("&oob=").append(oob);
+		return key.toString();
+	}
+
+	private static void appendParameter(StringBuilder key, String name, String value) {
+		key.append('&').append(name);
+		// tell null apart from an empty value
+		if(value != null)
+			key.append('=').append(value.length()).append(':').append(value);
+	}
 }
@@ -0,0 +1,118 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.Collection;
+import java.util.Locale;
+
+import javax.ws.rs.core.EntityTag;
+
+import play.Play;
+import play.db.Model;
+import play.libs.Codec;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * Makes entity tags for single entities. These are weak tags, since the same entity has an XML and a JSON 
+ * representation. The <tt>resteasy.crud.etag</tt> setting selects how they are made:
+ * <ul>
+ * <li><tt>version</tt> (the default): from the {@link javax.persistence.Version} property, for models that have one,</li>
+ * <li><tt>hash</tt>: from the version if there is one, otherwise from a hash of the entity's property values,</li>
+ * <li><tt>none</tt>: no entity tags.</li>
+ * </ul>
+ */
+public class EntityTags {
+
+	/**
+	 * The <tt>resteasy.crud.etag</tt> setting values
+	 */
+	public enum Mode {
+		VERSION, HASH, NONE;
+	}
+
+	/**
+	 * @return the configured mode
+	 */
+	public static Mode getMode() {
+		return Mode.valueOf(Play.configuration.getProperty("resteasy.crud.etag", "version").trim().toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Checks if we can tell the entity tag of an entity from its version alone
+	 * @param model the model metadata
+	 * @return true if the model is versioned and entity tags are enabled
+	 */
+	public static boolean isVersioned(CRUDModel model) {
+		return model.version != null && getMode() != Mode.NONE;
+	}
+
+	/**
+	 * Makes the entity tag for the given version
+	 * @param version the entity version
+	 * @return the entity tag
+	 */
+	public static EntityTag forVersion(Object version) {
+		return new EntityTag(String.valueOf(TypeConverter.format(version)), true);
+	}
+
+	/**
+	 * Makes the entity tag for the given entity
+	 * @param model the model metadata
+	 * @param entity the entity
+	 * @return the entity tag, or null if entity tags are disabled or the model is not versioned and hashes 
+	 * are not enabled
+	 */
+	public static EntityTag forEntity(CRUDModel model, Model entity) {
+		Mode mode = getMode();
+		if(mode == Mode.NONE)
+			return null;
+		try{
+			if(model.version != null)
+				return forVersion(model.version.get(entity));
+			if(mode != Mode.HASH)
+				return null;
+			StringBuilder values = new StringBuilder();
+			for(CRUDProperty property : model.properties){
+				property.field.setAccessible(true);
+				values.append(property.name).append('=');
+				appendValue(values, property.field.get(entity));
+				values.append(';');
+			}
+			return new EntityTag(Codec.hexMD5(values.toString()), true);
+		}catch(IllegalAccessException x){
+			throw new RuntimeException(x);
+		}
+	}
+
+	private static void appendValue(StringBuilder values, Object value) {
+		if(value == null)
+			values.append("\\0");
+		else if(value instanceof Model)
+			values.append(TypeConverter.format(((Model) value)._key()));
+		else if(value instanceof Collection){
+			values.append('[');
+			for(Object element : (Collection<?>) value){
+				appendValue(values, element);
+				values.append(',');
+			}
+			values.append(']');
+		}else
+			values.append(TypeConverter.format(value));
+	}
+}
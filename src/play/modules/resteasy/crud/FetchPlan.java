@@ -0,0 +1,158 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.Query;
+
+import org.apache.commons.lang.StringUtils;
+
+import play.Logger;
+import play.db.Model;
+import play.db.jpa.JPA;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * The associations to load along with the entities of a resource, as declared by {@link CRUD#fetch()}, so 
+ * that marshalling them does not issue one query per entity and association.
+ * 
+ * Single-valued associations are fetched with a <tt>LEFT JOIN FETCH</tt> in the paged query itself, which
+ * does not change its rows, so paging and counts stay correct. Collections would multiply the rows and 
+ * break SQL paging, so each of them is fetched by a second query for the entities of the page, by key.
+ * Those entities are already in the session, so this query only initialises their collections.
+ */
+public class FetchPlan {
+
+	/**
+	 * The alias the paged query gives its root entity when it has joins
+	 */
+	public static final String ALIAS = "_root";
+
+	/**
+	 * Maximum number of keys we put in a single IN condition
+	 */
+	public static final int MAX_KEYS = 500;
+
+	private static final Map<String, FetchPlan> plans = new ConcurrentHashMap<String, FetchPlan>();
+
+	private final List<String> joins;
+	private final String joinQuery;
+	private final List<String> collectionQueries;
+
+	private FetchPlan(CRUDModel model, String[] fetch) {
+		List<String> joins = new ArrayList<String>();
+		List<String> collections = new ArrayList<String>();
+		for(String name : fetch){
+			CRUDProperty property = model.getProperty(name);
+			if(property == null || !property.property.isRelation)
+				throw new IllegalArgumentException("Cannot fetch "+name+" of "+model.model.getName()+": it is not an association");
+			if(property.property.isMultiple)
+				collections.add(name);
+			else
+				joins.add(name);
+		}
+		this.joins = Collections.unmodifiableList(joins);
+		String from = "SELECT " + ALIAS + " FROM " + model.model.getSimpleName() + " " + ALIAS;
+		String where = " WHERE " + ALIAS + "." + model.factory.keyName() + " IN (:ids)";
+		this.joinQuery = joins.isEmpty() ? null : from + getJoinClause() + where;
+		List<String> collectionQueries = new ArrayList<String>(collections.size());
+		// one query per collection, since fetching several would select their cartesian product
+		for(String collection : collections)
+			collectionQueries.add(from + " LEFT JOIN FETCH " + ALIAS + "." + collection + where);
+		this.collectionQueries = Collections.unmodifiableList(collectionQueries);
+	}
+
+	/**
+	 * Gets the fetch plan for the given associations of a model
+	 * @param model the model metadata
+	 * @param fetch the association property names
+	 * @return the fetch plan, or null if there is nothing to fetch
+	 * @throws IllegalArgumentException if one of the properties is not an association
+	 */
+	public static FetchPlan get(CRUDModel model, String[] fetch) {
+		if(fetch == null || fetch.length == 0)
+			return null;
+		String key = model.model.getName() + ' ' + StringUtils.join(fetch, ',');
+		FetchPlan ret = plans.get(key);
+		if(ret == null){
+			ret = new FetchPlan(model, fetch);
+			plans.put(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Forgets every fetch plan, called when the application is reloaded
+	 */
+	public static void clear() {
+		plans.clear();
+	}
+
+	/**
+	 * @return the single-valued associations to join fetch
+	 */
+	public List<String> getJoins() {
+		return joins;
+	}
+
+	/**
+	 * @return the join fetch clauses for the single-valued associations, for a query whose root entity is 
+	 * aliased as {@link #ALIAS}, or an empty String
+	 */
+	public String getJoinClause() {
+		StringBuilder ret = new StringBuilder();
+		for(String join : joins)
+			ret.append(" LEFT JOIN FETCH ").append(ALIAS).append('.').append(join);
+		return ret.toString();
+	}
+
+	/**
+	 * Fetches the associations of entities that were loaded in the current session
+	 * @param entities the entities
+	 * @param joined true if the single-valued associations were already join fetched with the entities
+	 */
+	public void fetch(List<? extends Model> entities, boolean joined) {
+		if(entities.isEmpty() || (joined && collectionQueries.isEmpty()))
+			return;
+		List<Object> keys = new ArrayList<Object>(entities.size());
+		for(Model entity : entities)
+			keys.add(entity._key());
+		for(int i=0;i<keys.size();i+=MAX_KEYS){
+			List<Object> ids = keys.subList(i, Math.min(keys.size(), i + MAX_KEYS));
+			if(!joined && joinQuery != null)
+				run(joinQuery, ids);
+			for(String query : collectionQueries)
+				run(query, ids);
+		}
+	}
+
+	private static void run(String hql, List<Object> ids) {
+		if(Logger.isDebugEnabled())
+			Logger.debug("Fetching associations: %s", hql);
+		Query query = JPA.em().createQuery(hql);
+		query.setParameter("ids", ids);
+		// we only want the side effect of initialising the associations
+		query.getResultList();
+	}
+}
@@ -0,0 +1,239 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * A condition on a property, as specified by a <tt>filter</tt> parameter of the form 
+ * <tt>field:operator:value</tt>, for instance <tt>status:eq:OPEN</tt> or <tt>created:between:2011-01-01,2011-02-01</tt>.
+ * Only properties marked as {@link CRUDField#filterable()} can be filtered on. 
+ * 
+ * Values are converted to the Java type of the property with {@link TypeConverter}, and bound as query 
+ * parameters, so that indexes on the property can be used.
+ */
+public class Filter {
+
+	/**
+	 * The filter operators
+	 */
+	public enum Operator {
+		/**
+		 * The property is equal to the value
+		 */
+		EQ,
+		/**
+		 * The property is not equal to the value
+		 */
+		NE,
+		/**
+		 * The property is less than the value, for numbers, dates and Strings
+		 */
+		LT,
+		/**
+		 * The property is greater than the value, for numbers, dates and Strings
+		 */
+		GT,
+		/**
+		 * The property is equal to one of the comma-separated values
+		 */
+		IN,
+		/**
+		 * The property is between the two comma-separated values, inclusive, for numbers, dates and Strings
+		 */
+		BETWEEN,
+		/**
+		 * The property is null if the value is true or empty, not null if it is false
+		 */
+		ISNULL,
+		/**
+		 * The String property starts with the value, case-sensitive
+		 */
+		PREFIX;
+
+		boolean isOrdered() {
+			return this == LT || this == GT || this == BETWEEN;
+		}
+	}
+
+	/**
+	 * The property we filter on
+	 */
+	public final CRUDProperty property;
+	/**
+	 * The operator
+	 */
+	public final Operator operator;
+	/**
+	 * The converted values: one for most operators, two for {@link Operator#BETWEEN}, a List for 
+	 * {@link Operator#IN}, and a Boolean for {@link Operator#ISNULL}
+	 */
+	public final List<Object> values;
+
+	private Filter(CRUDProperty property, Operator operator, List<Object> values) {
+		this.property = property;
+		this.operator = operator;
+		this.values = Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Parses a filter
+	 * @param model the model metadata
+	 * @param filter the filter, as <tt>field:operator:value</tt>
+	 * @return the filter
+	 * @throws IllegalArgumentException if the filter is not valid for this model
+	 */
+	public static Filter parse(CRUDModel model, String filter) {
+		String[] parts = filter.split(":", 3);
+		if(parts.length < 2)
+			throw new IllegalArgumentException("Invalid filter, expecting field:operator:value: "+filter);
+		String field = parts[0].trim();
+		CRUDProperty property = model.getProperty(field);
+		if(property == null || !model.filterable.contains(field))
+			throw new IllegalArgumentException("Field cannot be filtered on: "+field);
+		Operator operator;
+		try{
+			operator = Operator.valueOf(parts[1].trim().toUpperCase(Locale.ENGLISH));
+		}catch(IllegalArgumentException x){
+			throw new IllegalArgumentException("Invalid filter operator: "+parts[1]);
+		}
+		Class<?> type = property.field.getType();
+		if(operator.isOrdered() && !isOrdered(property))
+			throw new IllegalArgumentException("Field cannot be compared: "+field);
+		if(operator == Operator.PREFIX && type != String.class)
+			throw new IllegalArgumentException("Field is not a String: "+field);
+		String value = parts.length > 2 ? parts[2] : "";
+		List<Object> values = new ArrayList<Object>(2);
+		try{
+			switch(operator){
+			case ISNULL:
+				values.add(value.length() == 0 ? Boolean.TRUE : TypeConverter.parse(Boolean.class, value));
+				break;
+			case IN:
+				List<Object> list = new ArrayList<Object>();
+				for(String item : StringUtils.splitPreserveAllTokens(value, ','))
+					list.add(TypeConverter.parse(type, item));
+				if(list.isEmpty())
+					throw new IllegalArgumentException("Expecting at least one value");
+				values.add(list);
+				break;
+			case BETWEEN:
+				String[] bounds = StringUtils.splitPreserveAllTokens(value, ',');
+				if(bounds.length != 2)
+					throw new IllegalArgumentException("Expecting two comma-separated values: "+value);
+				values.add(TypeConverter.parse(type, bounds[0]));
+				values.add(TypeConverter.parse(type, bounds[1]));
+				break;
+			case PREFIX:
+				values.add(SearchMode.likePrefix(value));
+				break;
+			default:
+				values.add(TypeConverter.parse(type, value));
+			}
+		}catch(IllegalArgumentException x){
+			// this includes NumberFormatException
+			throw new IllegalArgumentException("Invalid value for filter on "+field+": "+x.getMessage());
+		}
+		return new Filter(property, operator, values);
+	}
+
+	/**
+	 * Checks if a property can be declared filterable
+	 * @param property the property
+	 * @return true if it has a simple type, an enum type or is a primitive boolean
+	 */
+	public static boolean isFilterable(CRUDProperty property) {
+		Class<?> type = property.field.getType();
+		return property.fieldType != null || type.isEnum() || type == Boolean.TYPE;
+	}
+
+	private static boolean isOrdered(CRUDProperty property) {
+		return property.fieldType == Type.STRING || property.fieldType == Type.INTEGER
+			|| property.fieldType == Type.DECIMAL || property.fieldType == Type.DATE;
+	}
+
+	/**
+	 * Gets the part of the HQL predicate that does not depend on the values, for {@link PagedQuery} query shapes
+	 */
+	public String getShapeKey() {
+		if(operator == Operator.ISNULL)
+			return property.name + ':' + operator + ':' + values.get(0);
+		return property.name + ':' + operator;
+	}
+
+	/**
+	 * Makes the HQL predicate for this filter
+	 * @param parameter the name of the query parameter to use, which is suffixed for the second value of
+	 * {@link Operator#BETWEEN}
+	 * @return the HQL predicate
+	 */
+	public String predicate(String parameter) {
+		String field = property.name;
+		switch(operator){
+		case EQ:
+			return field + " = :" + parameter;
+		case NE:
+			return field + " <> :" + parameter;
+		case LT:
+			return field + " < :" + parameter;
+		case GT:
+			return field + " > :" + parameter;
+		case IN:
+			return field + " IN (:" + parameter + ")";
+		case BETWEEN:
+			return field + " BETWEEN :" + parameter + " AND :" + parameter + "_to";
+		case ISNULL:
+			return field + (Boolean.TRUE.equals(values.get(0)) ? " IS NULL" : " IS NOT NULL");
+		case PREFIX:
+			return field + " LIKE :" + parameter + " ESCAPE '" + SearchMode.ESCAPE + "'";
+		}
+		throw new RuntimeException("Unknown filter operator: "+operator);
+	}
+
+	/**
+	 * Sets the query parameters of the predicate made by {@link #predicate(String)}
+	 * @param parameters the query parameters
+	 * @param parameter the name of the query parameter
+	 */
+	public void bind(Map<String, Object> parameters, String parameter) {
+		switch(operator){
+		case ISNULL:
+			break;
+		case BETWEEN:
+			parameters.put(parameter, values.get(0));
+			parameters.put(parameter + "_to", values.get(1));
+			break;
+		default:
+			parameters.put(parameter, values.get(0));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return property.name + ':' + operator + ':' + values;
+	}
+}
@@ -0,0 +1,970 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ws.rs.core.UriInfo;
+import javax.xml.bind.annotation.XmlAccessOrder;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorOrder;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlID;
+import javax.xml.bind.annotation.XmlNsForm;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hibernate.proxy.HibernateProxy;
+import org.jboss.resteasy.annotations.providers.jaxb.json.Mapped;
+import org.jboss.resteasy.annotations.providers.jaxb.json.XmlNsMap;
+import org.jboss.resteasy.core.ResourceMethodRegistry;
+import org.jboss.resteasy.links.AddLinks;
+import org.jboss.resteasy.links.impl.RESTUtils;
+import org.jboss.resteasy.spi.Registry;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.jboss.resteasy.util.FindAnnotation;
+
+import play.libs.Codec;
+
+/**
+ * Walks an object graph the way JAXB marshals it, and reports it to a {@link Sink} as the JSON tree that 
+ * the Jettison mapped convention makes of the XML. This lets us write the same documents as the JAXB
+ * providers without going through XML events. We only read the JAXB annotations once per class.
+ * 
+ * The tree follows the Jettison conventions: the document is an object with the root element name as only
+ * key, attributes are keys prefixed with <tt>@</tt>, namespaced names are prefixed with the JSON name that
+ * the {@link Mapped} annotation of the root class gives their namespace, an element that occurs once is a 
+ * single value and one that is repeated is an array, and an element without content is an empty String.
+ * 
+ * We support the subset of JAXB that CRUD resources and their models use: field and annotated getter 
+ * properties, {@link XmlElement}, {@link XmlAttribute}, {@link XmlElementRef}, {@link XmlID}, 
+ * {@link XmlTransient}, {@link XmlType#propOrder()}, {@link XmlAccessorOrder}, {@link XmlEnumValue}, 
+ * collections, arrays and simple types. {@link #canWalk(Class)} tells whether a class graph only uses those, 
+ * so that callers can fall back to JAXB otherwise.
+ * 
+ * Formats that are not JSON text can walk in plain mode instead, which keeps the same keys but drops the
+ * Jettison artifacts: collections are always arrays, beans without content are empty objects, there are no
+ * <tt>@xsi.type</tt> keys, and unmapped namespaces are left out of the keys.
+ */
+public class JAXBWalker {
+
+	/**
+	 * Receives the JSON tree of a document
+	 */
+	public interface Sink {
+		public void startObject() throws IOException;
+		public void endObject() throws IOException;
+		public void startArray() throws IOException;
+		public void endArray() throws IOException;
+		/**
+		 * The key of the next value, in an object
+		 */
+		public void key(String key) throws IOException;
+		/**
+		 * A simple value
+		 * @param value the Java value: a String, Number, Boolean, Date, Calendar, byte array, or any other
+		 * simple type, which is only known by its text
+		 * @param text the XML text of the value, as JAXB prints it
+		 */
+		public void value(Object value, String text) throws IOException;
+	}
+
+	/**
+	 * Called for every bean before it is walked, like {@link javax.xml.bind.Marshaller.Listener}
+	 */
+	public interface Listener {
+		public void beforeMarshal(Object bean);
+	}
+
+	private static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+	private static final String TEXT = "$";
+	private static final int MAX_DEPTH = 100;
+
+	private static final Map<Class<?>, Binding> bindings = new ConcurrentHashMap<Class<?>, Binding>();
+	private static final Set<String> UNWALKABLE = new HashSet<String>();
+	private static final Map<Class<?>, Set<String>> walkable = new ConcurrentHashMap<Class<?>, Set<String>>();
+	private static final Map<Class<?>, String[]> enumValues = new ConcurrentHashMap<Class<?>, String[]>();
+	private static final Map<Class<?>, Map<String, String>> namespaceMaps = new ConcurrentHashMap<Class<?>, Map<String, String>>();
+
+	/**
+	 * Forgets every class binding, called when the application is reloaded
+	 */
+	public static void clear() {
+		bindings.clear();
+		walkable.clear();
+		enumValues.clear();
+		namespaceMaps.clear();
+	}
+
+	/**
+	 * Checks if we can walk instances of the given class: it must be a root element and only use the JAXB
+	 * features we support, as must the declared types of its properties, recursively, and its {@link Mapped}
+	 * annotation must map every namespace they use. Properties declared as Object are checked when they are 
+	 * walked, see {@link #canWalk(Class, Class)}.
+	 * @param type the class
+	 * @return true if we can walk it
+	 */
+	public static boolean canWalk(Class<?> type) {
+		return canWalk(type, true);
+	}
+
+	/**
+	 * Checks if we can walk instances of the given class, like {@link #canWalk(Class)}
+	 * @param type the class
+	 * @param jettison false for plain mode, where namespaces need not be mapped
+	 * @return true if we can walk it
+	 */
+	public static boolean canWalk(Class<?> type, boolean jettison) {
+		if(!type.isAnnotationPresent(XmlRootElement.class))
+			return false;
+		Set<String> namespaces = getNamespaces(type);
+		return namespaces != null && (!jettison || getPrefixes(type).keySet().containsAll(namespaces));
+	}
+
+	/**
+	 * Checks if we can walk a value of a property declared as Object, as a bean or a simple type
+	 * @param root the class of the root element we are walking
+	 * @param type the class of the value
+	 * @return true if we can walk it
+	 */
+	public static boolean canWalk(Class<?> root, Class<?> type) {
+		return canWalk(root, type, true);
+	}
+
+	/**
+	 * Checks if we can walk a value of a property declared as Object, like {@link #canWalk(Class, Class)}
+	 * @param root the class of the root element we are walking
+	 * @param type the class of the value
+	 * @param jettison false for plain mode, where namespaces need not be mapped
+	 * @return true if we can walk it
+	 */
+	public static boolean canWalk(Class<?> root, Class<?> type, boolean jettison) {
+		if(!jettison)
+			return isSimple(type) || getNamespaces(type) != null;
+		Map<String, String> prefixes = getPrefixes(root);
+		if(!prefixes.containsKey(XSI))
+			return false;
+		if(isSimple(type))
+			return getSchemaType(type) != null;
+		Set<String> namespaces = getNamespaces(type);
+		return namespaces != null && prefixes.keySet().containsAll(namespaces);
+	}
+
+	/**
+	 * Gets the namespaces used by the graph of a class, or null if we cannot walk it
+	 */
+	private static Set<String> getNamespaces(Class<?> type) {
+		Set<String> ret = walkable.get(type);
+		if(ret == null){
+			ret = new HashSet<String>();
+			if(!isWalkable(type, new HashSet<Class<?>>(), ret))
+				ret = UNWALKABLE;
+			walkable.put(type, ret);
+		}
+		return ret != UNWALKABLE ? ret : null;
+	}
+
+	private static boolean isWalkable(Class<?> type, Set<Class<?>> visited, Set<String> namespaces) {
+		if(!visited.add(type))
+			return true;
+		Binding binding = getBinding(type);
+		if(binding.unsupported != null)
+			return false;
+		namespaces.add(binding.rootNamespace);
+		for(Member member : binding.members){
+			namespaces.add(member.namespace);
+			Class<?> itemType = member.itemType;
+			if(itemType == Object.class || isSimple(itemType))
+				continue;
+			if(itemType.isInterface() || Modifier.isAbstract(itemType.getModifiers()) || Map.class.isAssignableFrom(itemType))
+				return false;
+			if(member.ref && !itemType.isAnnotationPresent(XmlRootElement.class))
+				return false;
+			if(!isWalkable(itemType, visited, namespaces))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the JSON prefixes of the namespaces mapped by the {@link Mapped} annotation of a root class
+	 */
+	private static Map<String, String> getPrefixes(Class<?> type) {
+		Map<String, String> ret = namespaceMaps.get(type);
+		if(ret == null){
+			ret = new HashMap<String, String>();
+			ret.put("", "");
+			Mapped mapped = type.getAnnotation(Mapped.class);
+			if(mapped != null){
+				for(XmlNsMap map : mapped.namespaceMap())
+					ret.put(map.namespace(), map.jsonName() + ".");
+			}
+			namespaceMaps.put(type, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Makes a listener that injects resteasy-links service discovery like the {@link AddLinks} decorator does
+	 * on the JAXB Marshaller, for writers that walk instead
+	 * @param annotations the annotations of the resource method
+	 * @return the listener, or null if the resource method has no {@link AddLinks} annotation
+	 */
+	public static Listener makeLinksListener(Annotation[] annotations) {
+		if(FindAnnotation.findAnnotation(annotations, AddLinks.class) == null)
+			return null;
+		final UriInfo uriInfo = ResteasyProviderFactory.getContextData(UriInfo.class);
+		final ResourceMethodRegistry registry = (ResourceMethodRegistry) ResteasyProviderFactory.getContextData(Registry.class);
+		return new Listener() {
+			public void beforeMarshal(Object bean) {
+				RESTUtils.addDiscovery(bean, uriInfo, registry);
+			}
+		};
+	}
+
+	/**
+	 * Walks a root element
+	 * @param root the root element, which must be walkable
+	 * @param sink the sink to report to
+	 * @param listener the listener to call for every bean, or null
+	 * @throws IllegalStateException if we meet a class we cannot walk
+	 */
+	public static void walk(Object root, Sink sink, Listener listener) throws IOException {
+		walk(root, sink, listener, true);
+	}
+
+	/**
+	 * Walks a root element
+	 * @param root the root element, which must be walkable
+	 * @param sink the sink to report to
+	 * @param listener the listener to call for every bean, or null
+	 * @param jettison true to follow the Jettison conventions, false for plain mode
+	 * @throws IllegalStateException if we meet a class we cannot walk
+	 */
+	public static void walk(Object root, Sink sink, Listener listener, boolean jettison) throws IOException {
+		root = unproxy(root);
+		JAXBWalker walker = new JAXBWalker(sink, listener, getPrefixes(root.getClass()), jettison);
+		sink.startObject();
+		sink.key(walker.getRootName(root));
+		walker.writeBean(root, root.getClass());
+		sink.endObject();
+	}
+
+	private final Sink sink;
+	private final Listener listener;
+	private final Map<String, String> prefixes;
+	private final boolean jettison;
+	private int depth;
+
+	private JAXBWalker(Sink sink, Listener listener, Map<String, String> prefixes, boolean jettison) {
+		this.sink = sink;
+		this.listener = listener;
+		this.prefixes = prefixes;
+		this.jettison = jettison;
+	}
+
+	private String getKey(String namespace, String name, boolean attribute) {
+		String prefix = prefixes.get(namespace);
+		if(prefix == null){
+			// this is what Jettison does too
+			if(jettison)
+				throw new IllegalStateException("Invalid JSON namespace: "+namespace);
+			prefix = "";
+		}
+		return attribute ? "@" + prefix + name : prefix + name;
+	}
+
+	private String getKey(Member member) {
+		return member.namespace.length() == 0 ? member.key : getKey(member.namespace, member.name, member.attribute);
+	}
+
+	private void writeBean(Object bean, Class<?> declaredType) throws IOException {
+		if(++depth > MAX_DEPTH)
+			throw new IllegalStateException("Object graph too deep, or cyclic, at "+bean.getClass().getName());
+		if(listener != null)
+			listener.beforeMarshal(bean);
+		Binding binding = getBinding(bean.getClass());
+		if(binding.unsupported != null)
+			throw new IllegalStateException("Cannot marshal "+bean.getClass().getName()+": "+binding.unsupported);
+		String xsiType = null;
+		if(jettison && bean.getClass() != declaredType){
+			// JAXB would make up a prefix for it
+			if(binding.typeNamespace.length() > 0)
+				throw new IllegalStateException("Cannot marshal the namespaced type of "+bean.getClass().getName());
+			xsiType = binding.typeName;
+		}
+		Member[] members = binding.members;
+		Object[] values = new Object[members.length];
+		boolean empty = jettison && xsiType == null;
+		for(int i=0;i<members.length;i++){
+			Object value = members[i].get(bean);
+			values[i] = value;
+			if(empty && !isEmpty(value))
+				empty = false;
+		}
+		// Jettison makes an empty String of elements without content
+		if(empty){
+			sink.value("", "");
+			depth--;
+			return;
+		}
+		sink.startObject();
+		if(xsiType != null){
+			sink.key(getKey(XSI, "type", true));
+			sink.value(xsiType, xsiType);
+		}
+		for(int i=0;i<members.length;i++){
+			Object value = values[i];
+			if(value == null)
+				continue;
+			Member member = members[i];
+			if(member.collection)
+				writeCollection(member, value);
+			else{
+				sink.key(member.ref ? getRootName(value) : getKey(member));
+				writeItem(value, member.itemType);
+			}
+		}
+		sink.endObject();
+		depth--;
+	}
+
+	private void writeCollection(Member member, Object value) throws IOException {
+		Iterator<?> iterator = iterate(value);
+		Object first = nextItem(iterator);
+		if(first == null)
+			return;
+		String key = member.ref ? getRootName(first) : getKey(member);
+		sink.key(key);
+		Object next = nextItem(iterator);
+		if(next == null && jettison){
+			writeItem(first, member.itemType);
+			return;
+		}
+		sink.startArray();
+		writeItem(first, member.itemType);
+		while(next != null){
+			if(member.ref && !key.equals(getRootName(next)))
+				throw new IllegalStateException("Cannot marshal element references with different names in "+member.getName());
+			writeItem(next, member.itemType);
+			next = nextItem(iterator);
+		}
+		sink.endArray();
+	}
+
+	private static Object nextItem(Iterator<?> iterator) {
+		// JAXB skips null items
+		while(iterator.hasNext()){
+			Object ret = iterator.next();
+			if(ret != null)
+				return ret;
+		}
+		return null;
+	}
+
+	private void writeItem(Object value, Class<?> declaredType) throws IOException {
+		value = unproxy(value);
+		Class<?> type = value.getClass();
+		if(isSimple(type)){
+			String text = print(value);
+			if(declaredType != Object.class || !jettison)
+				sink.value(value, text);
+			else{
+				// JAXB types simple values of Object properties
+				String schemaType = getSchemaType(type);
+				if(schemaType == null)
+					throw new IllegalStateException("Cannot marshal "+type.getName()+" as Object");
+				sink.startObject();
+				sink.key(getKey(XSI, "type", true));
+				sink.value(schemaType, schemaType);
+				sink.key(TEXT);
+				sink.value(value, text);
+				sink.endObject();
+			}
+		}else
+			writeBean(value, declaredType);
+	}
+
+	private String getRootName(Object value) {
+		Binding binding = getBinding(unproxy(value).getClass());
+		if(binding.rootName == null)
+			throw new IllegalStateException("Not a root element: "+value.getClass().getName());
+		return getKey(binding.rootNamespace, binding.rootName, false);
+	}
+
+	private static Iterator<?> iterate(Object value) {
+		if(value instanceof Collection)
+			return ((Collection<?>) value).iterator();
+		if(value instanceof Object[])
+			return Arrays.asList((Object[]) value).iterator();
+		// primitive arrays
+		List<Object> ret = new ArrayList<Object>();
+		for(int i=0;i<Array.getLength(value);i++)
+			ret.add(Array.get(value, i));
+		return ret.iterator();
+	}
+
+	private static boolean isEmpty(Object value) {
+		if(value == null)
+			return true;
+		if(value instanceof Collection)
+			return ((Collection<?>) value).isEmpty();
+		if(value.getClass().isArray() && value.getClass() != byte[].class)
+			return Array.getLength(value) == 0;
+		return false;
+	}
+
+	/**
+	 * Gets the entity behind a Hibernate proxy
+	 * @param value a value
+	 * @return the proxied entity, or the value itself if it is not a proxy
+	 */
+	public static Object unproxy(Object value) {
+		if(value instanceof HibernateProxy)
+			return ((HibernateProxy) value).getHibernateLazyInitializer().getImplementation();
+		return value;
+	}
+
+	//
+	// Simple types
+
+	/**
+	 * Checks if a type is printed as text by JAXB
+	 * @param type the type
+	 * @return true for Strings, numbers, booleans, dates, enums, byte arrays, URIs and UUIDs
+	 */
+	public static boolean isSimple(Class<?> type) {
+		return type == String.class
+			|| (type.isPrimitive() && type != Character.TYPE && type != Void.TYPE)
+			|| Number.class.isAssignableFrom(type)
+			|| type == Boolean.class
+			|| Date.class.isAssignableFrom(type)
+			|| Calendar.class.isAssignableFrom(type)
+			|| XMLGregorianCalendar.class.isAssignableFrom(type)
+			|| type.isEnum()
+			|| type == byte[].class
+			|| type == URI.class
+			|| type == UUID.class;
+	}
+
+	private static String getSchemaType(Class<?> type) {
+		if(type == String.class)
+			return "xs:string";
+		if(type == Integer.class)
+			return "xs:int";
+		if(type == Long.class)
+			return "xs:long";
+		if(type == Short.class)
+			return "xs:short";
+		if(type == Byte.class)
+			return "xs:byte";
+		if(type == Boolean.class)
+			return "xs:boolean";
+		if(type == Double.class)
+			return "xs:double";
+		if(type == Float.class)
+			return "xs:float";
+		if(type == BigDecimal.class)
+			return "xs:decimal";
+		if(type == BigInteger.class)
+			return "xs:integer";
+		if(Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type))
+			return "xs:dateTime";
+		return null;
+	}
+
+	/**
+	 * Prints a simple value as JAXB does
+	 * @param value the value, of a simple type
+	 * @return its XML text
+	 */
+	public static String print(Object value) {
+		if(value instanceof String)
+			return (String) value;
+		if(value instanceof Double){
+			double d = (Double) value;
+			return Double.isNaN(d) ? "NaN" : d == Double.POSITIVE_INFINITY ? "INF" : d == Double.NEGATIVE_INFINITY ? "-INF" : String.valueOf(d);
+		}
+		if(value instanceof Float){
+			float f = (Float) value;
+			return Float.isNaN(f) ? "NaN" : f == Float.POSITIVE_INFINITY ? "INF" : f == Float.NEGATIVE_INFINITY ? "-INF" : String.valueOf(f);
+		}
+		if(value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		if(value instanceof Date){
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) value);
+			return printDateTime(calendar);
+		}
+		if(value instanceof Calendar)
+			return printDateTime((Calendar) value);
+		if(value instanceof XMLGregorianCalendar)
+			return ((XMLGregorianCalendar) value).toXMLFormat();
+		if(value instanceof Enum)
+			return printEnum((Enum<?>) value);
+		if(value instanceof byte[])
+			return Codec.encodeBASE64((byte[]) value);
+		return value.toString();
+	}
+
+	private static String printEnum(Enum<?> value) {
+		Class<?> type = value.getDeclaringClass();
+		String[] values = enumValues.get(type);
+		if(values == null){
+			Object[] constants = type.getEnumConstants();
+			values = new String[constants.length];
+			for(int i=0;i<constants.length;i++){
+				String name = ((Enum<?>) constants[i]).name();
+				values[i] = name;
+				try {
+					XmlEnumValue enumValue = type.getField(name).getAnnotation(XmlEnumValue.class);
+					if(enumValue != null)
+						values[i] = enumValue.value();
+				} catch (NoSuchFieldException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			enumValues.put(type, values);
+		}
+		return values[value.ordinal()];
+	}
+
+	private static String printDateTime(Calendar calendar) {
+		StringBuilder ret = new StringBuilder(29);
+		pad(ret, calendar.get(Calendar.YEAR), 4);
+		ret.append('-');
+		pad(ret, calendar.get(Calendar.MONTH) + 1, 2);
+		ret.append('-');
+		pad(ret, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		ret.append('T');
+		pad(ret, calendar.get(Calendar.HOUR_OF_DAY), 2);
+		ret.append(':');
+		pad(ret, calendar.get(Calendar.MINUTE), 2);
+		ret.append(':');
+		pad(ret, calendar.get(Calendar.SECOND), 2);
+		int millis = calendar.get(Calendar.MILLISECOND);
+		if(millis != 0){
+			ret.append('.');
+			pad(ret, millis, 3);
+		}
+		TimeZone zone = calendar.getTimeZone();
+		int offset = zone.getOffset(calendar.getTimeInMillis()) / 60000;
+		if(offset == 0)
+			return ret.append('Z').toString();
+		ret.append(offset < 0 ? '-' : '+');
+		offset = Math.abs(offset);
+		pad(ret, offset / 60, 2);
+		ret.append(':');
+		pad(ret, offset % 60, 2);
+		return ret.toString();
+	}
+
+	private static void pad(StringBuilder ret, int value, int digits) {
+		String string = Integer.toString(value);
+		for(int i=string.length();i<digits;i++)
+			ret.append('0');
+		ret.append(string);
+	}
+
+	//
+	// Bindings
+
+	private static Binding getBinding(Class<?> type) {
+		Binding ret = bindings.get(type);
+		if(ret == null){
+			ret = new Binding(type);
+			bindings.put(type, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the field property of a class that a key maps to, for reading back what we walked
+	 * @param type the class
+	 * @param key a key we write for that class, without namespace
+	 * @return the field, or null if the key maps to no field property
+	 */
+	static Field getField(Class<?> type, String key) {
+		return getBinding(type).fields.get(key);
+	}
+
+	/**
+	 * Gets the root element name of a class
+	 * @param type the class
+	 * @return the root element name, or null if it is not a root element
+	 */
+	static String getRootName(Class<?> type) {
+		return getBinding(type).rootName;
+	}
+
+	/**
+	 * Gets the item type of a collection or array property
+	 * @param type the property type
+	 * @param genericType the generic property type
+	 * @return the item type, or Object if it is not known
+	 */
+	static Class<?> getItemType(Class<?> type, java.lang.reflect.Type genericType) {
+		return Member.getItemType(type, genericType);
+	}
+
+	/**
+	 * Gets the name JAXB derives from a Java name, which lower-cases its first word
+	 * @param name a class or property name
+	 * @return the XML name
+	 */
+	public static String toXmlName(String name) {
+		int upper = 0;
+		while(upper < name.length() && Character.isUpperCase(name.charAt(upper)))
+			upper++;
+		if(upper == 0)
+			return name;
+		if(upper == name.length())
+			return name.toLowerCase(Locale.ENGLISH);
+		// in "URLThing" the first word is "URL"
+		int end = upper == 1 ? 1 : upper - 1;
+		return name.substring(0, end).toLowerCase(Locale.ENGLISH) + name.substring(end);
+	}
+
+	/**
+	 * A property of a class
+	 */
+	private static class Member {
+		final String namespace;
+		final String name;
+		// the key, when there is no namespace
+		final String key;
+		final Field field;
+		final Method getter;
+		final boolean attribute;
+		final boolean ref;
+		final boolean collection;
+		final Class<?> itemType;
+
+		Member(String namespace, String name, Field field, Method getter, boolean attribute, boolean ref, 
+				Class<?> type, java.lang.reflect.Type genericType) {
+			this.namespace = namespace;
+			this.name = name;
+			this.key = attribute ? "@" + name : name;
+			this.field = field;
+			this.getter = getter;
+			this.attribute = attribute;
+			this.ref = ref;
+			this.collection = Collection.class.isAssignableFrom(type) || (type.isArray() && type != byte[].class);
+			this.itemType = collection ? getItemType(type, genericType) : type;
+			if(field != null)
+				field.setAccessible(true);
+			else
+				getter.setAccessible(true);
+		}
+
+		private static Class<?> getItemType(Class<?> type, java.lang.reflect.Type genericType) {
+			if(type.isArray())
+				return type.getComponentType();
+			// collection classes such as RESTServiceDiscovery
+			if(genericType instanceof Class && ((Class<?>) genericType).getGenericSuperclass() instanceof ParameterizedType)
+				genericType = ((Class<?>) genericType).getGenericSuperclass();
+			if(genericType instanceof ParameterizedType){
+				java.lang.reflect.Type item = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+				if(item instanceof Class)
+					return (Class<?>) item;
+				if(item instanceof ParameterizedType)
+					return (Class<?>) ((ParameterizedType) item).getRawType();
+				if(item instanceof GenericArrayType)
+					return Object[].class;
+			}
+			// type variables and wildcards are erased to Object
+			return Object.class;
+		}
+
+		String getName() {
+			return field != null ? field.getName() : getter.getName() + "()";
+		}
+
+		Object get(Object bean) {
+			try {
+				return field != null ? field.get(bean) : getter.invoke(bean);
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to read "+getName()+" of "+bean.getClass().getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * The JAXB binding of a class: its names and the properties we marshal, attributes first
+	 */
+	private static class Binding {
+		// null if this is not a root element
+		final String rootName;
+		final String rootNamespace;
+		final String typeName;
+		final String typeNamespace;
+		final Member[] members;
+		// the field properties without namespace, by key
+		final Map<String, Field> fields = new HashMap<String, Field>();
+		// why we cannot marshal this class, or null
+		String unsupported;
+
+		Binding(Class<?> type) {
+			XmlRootElement root = type.getAnnotation(XmlRootElement.class);
+			if(root != null){
+				this.rootName = makeName(root.name(), type.getSimpleName(), false);
+				this.rootNamespace = makeNamespace(root.namespace());
+			}else{
+				this.rootName = null;
+				this.rootNamespace = "";
+			}
+			XmlType xmlType = type.getAnnotation(XmlType.class);
+			if(xmlType != null && !"##default".equals(xmlType.name()))
+				this.typeName = xmlType.name();
+			else
+				this.typeName = toXmlName(type.getSimpleName());
+			this.typeNamespace = xmlType != null ? makeNamespace(xmlType.namespace()) : "";
+			XmlSchema schema = type.getPackage() != null ? type.getPackage().getAnnotation(XmlSchema.class) : null;
+			if(schema != null && (schema.namespace().length() > 0 || schema.elementFormDefault() == XmlNsForm.QUALIFIED))
+				unsupport("package namespace");
+			List<Member> attributes = new ArrayList<Member>();
+			List<Member> elements = new ArrayList<Member>();
+			List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+			for(Class<?> t = type; t != null && t != Object.class; t = t.getSuperclass())
+				hierarchy.add(0, t);
+			for(Class<?> t : hierarchy){
+				if(Collection.class.isAssignableFrom(t) || Map.class.isAssignableFrom(t)){
+					unsupport("collection class");
+					break;
+				}
+				if(t.isAnnotationPresent(XmlJavaTypeAdapter.class))
+					unsupport("type adapter");
+				List<Member> classElements = new ArrayList<Member>();
+				addMembers(t, attributes, classElements);
+				sortMembers(t, classElements);
+				elements.addAll(classElements);
+			}
+			List<Member> members = new ArrayList<Member>(attributes);
+			members.addAll(elements);
+			this.members = members.toArray(new Member[members.size()]);
+			for(Member member : members){
+				if(member.field != null && !member.ref && member.namespace.length() == 0)
+					fields.put(member.key, member.field);
+			}
+		}
+
+		private void unsupport(String reason) {
+			if(unsupported == null)
+				unsupported = reason;
+		}
+
+		private void addMembers(Class<?> type, List<Member> attributes, List<Member> elements) {
+			XmlAccessType access = getAccessType(type);
+			Set<String> fieldNames = new HashSet<String>();
+			for(Field field : type.getDeclaredFields()){
+				int modifiers = field.getModifiers();
+				if(Modifier.isStatic(modifiers) || field.isAnnotationPresent(XmlTransient.class))
+					continue;
+				boolean annotated = isAnnotated(field.getAnnotations());
+				boolean bound = annotated 
+					|| (!Modifier.isTransient(modifiers) 
+							&& (access == XmlAccessType.FIELD 
+									|| (access == XmlAccessType.PUBLIC_MEMBER && Modifier.isPublic(modifiers))));
+				if(!bound)
+					continue;
+				fieldNames.add(field.getName());
+				addMember(field.getName(), field, null, field.getType(), field.getGenericType(), 
+						field.getAnnotations(), attributes, elements);
+			}
+			for(Method method : type.getDeclaredMethods()){
+				if(Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.isSynthetic())
+					continue;
+				String property = getPropertyName(method);
+				if(property == null)
+					continue;
+				if(isAnnotated(method.getAnnotations())){
+					addMember(property, null, method, method.getReturnType(), method.getGenericReturnType(), 
+							method.getAnnotations(), attributes, elements);
+				}else if((access == XmlAccessType.PUBLIC_MEMBER || access == XmlAccessType.PROPERTY)
+						&& Modifier.isPublic(method.getModifiers())
+						&& !method.isAnnotationPresent(XmlTransient.class)
+						&& !fieldNames.contains(property)
+						&& hasSetter(type, method, property))
+					unsupport("unannotated getter/setter property "+property);
+			}
+		}
+
+		private void addMember(String name, Field field, Method getter, Class<?> type, java.lang.reflect.Type genericType,
+				Annotation[] annotations, List<Member> attributes, List<Member> elements) {
+			for(Annotation annotation : annotations){
+				Class<? extends Annotation> annotationType = annotation.annotationType();
+				if(annotationType.getName().startsWith("javax.xml.bind.annotation.")
+						&& annotationType != XmlElement.class
+						&& annotationType != XmlAttribute.class
+						&& annotationType != XmlElementRef.class
+						&& annotationType != XmlID.class)
+					unsupport(annotationType.getSimpleName()+" on "+name);
+			}
+			if(Map.class.isAssignableFrom(type) || type == Character.class || type == Character.TYPE)
+				unsupport("type of "+name);
+			if(type.isAnnotationPresent(XmlJavaTypeAdapter.class))
+				unsupport("type adapter on the type of "+name);
+			XmlAttribute attribute = findAnnotation(annotations, XmlAttribute.class);
+			XmlElementRef ref = findAnnotation(annotations, XmlElementRef.class);
+			XmlElement element = findAnnotation(annotations, XmlElement.class);
+			Member member;
+			if(attribute != null){
+				member = new Member(makeNamespace(attribute.namespace()), makeName(attribute.name(), name, true), 
+						field, getter, true, false, type, genericType);
+				if(member.collection || !isSimple(member.itemType))
+					unsupport("attribute "+name+" is not simple");
+				attributes.add(member);
+			}else if(ref != null){
+				member = new Member("", name, field, getter, false, true, type, genericType);
+				elements.add(member);
+			}else{
+				String namespace = element != null ? element.namespace() : "##default";
+				String elementName = element != null ? element.name() : "##default";
+				member = new Member(makeNamespace(namespace), makeName(elementName, name, false), 
+						field, getter, false, false, type, genericType);
+				elements.add(member);
+			}
+		}
+
+		private static String makeName(String name, String javaName, boolean attribute) {
+			if("##default".equals(name))
+				return attribute ? javaName : toXmlName(javaName);
+			return name;
+		}
+
+		private static String makeNamespace(String namespace) {
+			// we do not support package namespaces
+			return "##default".equals(namespace) ? "" : namespace;
+		}
+
+		private void sortMembers(Class<?> type, List<Member> elements) {
+			XmlType xmlType = type.getAnnotation(XmlType.class);
+			if(xmlType != null && xmlType.propOrder().length > 0 
+					&& !(xmlType.propOrder().length == 1 && xmlType.propOrder()[0].length() == 0)){
+				final List<String> order = Arrays.asList(xmlType.propOrder());
+				for(Member member : elements){
+					if(!order.contains(member.field != null ? member.getName() : getPropertyName(member.getter)))
+						unsupport("property missing from propOrder");
+				}
+				Collections.sort(elements, new Comparator<Member>(){
+					public int compare(Member a, Member b) {
+						return order.indexOf(getJavaName(a)) - order.indexOf(getJavaName(b));
+					}
+				});
+				return;
+			}
+			XmlAccessorOrder accessorOrder = type.getAnnotation(XmlAccessorOrder.class);
+			if(accessorOrder == null && type.getPackage() != null)
+				accessorOrder = type.getPackage().getAnnotation(XmlAccessorOrder.class);
+			if(accessorOrder != null && accessorOrder.value() == XmlAccessOrder.ALPHABETICAL){
+				Collections.sort(elements, new Comparator<Member>(){
+					public int compare(Member a, Member b) {
+						return getJavaName(a).compareTo(getJavaName(b));
+					}
+				});
+			}
+		}
+
+		private static String getJavaName(Member member) {
+			return member.field != null ? member.getName() : getPropertyName(member.getter);
+		}
+
+		private static XmlAccessType getAccessType(Class<?> type) {
+			XmlAccessorType accessorType = type.getAnnotation(XmlAccessorType.class);
+			if(accessorType == null && type.getPackage() != null)
+				accessorType = type.getPackage().getAnnotation(XmlAccessorType.class);
+			return accessorType != null ? accessorType.value() : XmlAccessType.PUBLIC_MEMBER;
+		}
+
+		private static boolean isAnnotated(Annotation[] annotations) {
+			for(Annotation annotation : annotations){
+				if(annotation.annotationType().getName().startsWith("javax.xml.bind.annotation.")
+						&& annotation.annotationType() != XmlTransient.class)
+					return true;
+			}
+			return false;
+		}
+
+		private static String getPropertyName(Method method) {
+			if(method.getParameterTypes().length != 0 || method.getReturnType() == Void.TYPE)
+				return null;
+			String name = method.getName();
+			if(name.startsWith("get") && name.length() > 3)
+				return toXmlName(name.substring(3));
+			if(name.startsWith("is") && name.length() > 2 
+					&& (method.getReturnType() == Boolean.TYPE || method.getReturnType() == Boolean.class))
+				return toXmlName(name.substring(2));
+			return null;
+		}
+
+		private static boolean hasSetter(Class<?> type, Method getter, String property) {
+			String setter = "set" + getter.getName().substring(getter.getName().startsWith("is") ? 2 : 3);
+			try {
+				type.getMethod(setter, getter.getReturnType());
+				return true;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+
+		private static <T extends Annotation> T findAnnotation(Annotation[] annotations, Class<T> type) {
+			for(Annotation annotation : annotations){
+				if(annotation.annotationType() == type)
+					return type.cast(annotation);
+			}
+			return null;
+		}
+	}
+}
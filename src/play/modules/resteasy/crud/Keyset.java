@@ -0,0 +1,195 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import play.db.Model;
+import play.libs.Codec;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * Keyset (seek) paging: rather than skipping rows with an offset, we remember the sort key values of the
+ * last row returned in an opaque cursor, and only select the rows that sort after it. This costs the same
+ * for every page as long as the sort columns are indexed. The entity key is always added as the last sort
+ * column to make the order total.
+ * 
+ * Sort columns must not be null for rows we page over: we do not make a cursor for a row with null sort values.
+ */
+public class Keyset {
+
+	private static final String PARAMETER = "_after";
+
+	private final String[] columns;
+	private final boolean[] descending;
+	private final Class<?>[] types;
+	private final CRUDProperty[] properties;
+	private final Sort sort;
+
+	/**
+	 * Makes a keyset for the given model and sort order
+	 * @param model the model metadata
+	 * @param sort a valid sort order, or null
+	 * @throws IllegalArgumentException if the sort order uses column numbers
+	 */
+	public Keyset(CRUDModel model, Sort sort) {
+		String keyName = model.factory.keyName();
+		sort = sort != null ? sort.with(keyName, false) : Sort.by(keyName, false);
+		List<Sort.Order> orders = sort.getOrders();
+		int size = orders.size();
+		this.columns = new String[size];
+		this.descending = new boolean[size];
+		this.types = new Class<?>[size];
+		this.properties = new CRUDProperty[size];
+		for(int i=0;i<size;i++){
+			Sort.Order order = orders.get(i);
+			if(order.numeric)
+				throw new IllegalArgumentException("Keyset paging requires named sort columns: "+order.column);
+			this.columns[i] = order.column;
+			this.descending[i] = order.descending;
+			this.properties[i] = model.getProperty(order.column);
+			if(this.properties[i] != null){
+				this.properties[i].field.setAccessible(true);
+				this.types[i] = this.properties[i].field.getType();
+			}else if(order.column.equals(keyName))
+				this.types[i] = model.factory.keyType();
+			else
+				throw new IllegalArgumentException("Keyset paging requires named sort columns: "+order.column);
+		}
+		this.sort = sort;
+	}
+
+	/**
+	 * @return the sort order matching this keyset, with the entity key as last column
+	 */
+	public Sort getSort() {
+		return sort;
+	}
+
+	/**
+	 * @return the ORDER BY clause matching this keyset, with the entity key as last column
+	 */
+	public String getOrder() {
+		return sort.getOrder();
+	}
+
+	/**
+	 * @return the names of the sort columns, with the entity key as last column
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Sets up the given query to return the rows that come after the given cursor
+	 * @param query the query to set up
+	 * @param after the cursor, or an empty String for the first page
+	 * @throws IllegalArgumentException if the cursor is not valid for this keyset
+	 */
+	public void apply(PagedQuery<?> query, String after) {
+		query.sort = sort;
+		query.start = null;
+		if(after == null || after.length() == 0)
+			return;
+		Object[] values = decode(after);
+		// (c0 > :v0) OR (c0 = :v0 AND c1 > :v1) OR ...
+		StringBuilder seek = new StringBuilder("(");
+		for(int i=0;i<columns.length;i++){
+			if(i > 0)
+				seek.append(" OR ");
+			seek.append("(");
+			for(int j=0;j<i;j++)
+				seek.append(columns[j]).append(" = :").append(PARAMETER).append(j).append(" AND ");
+			seek.append(columns[i]).append(descending[i] ? " < :" : " > :").append(PARAMETER).append(i);
+			seek.append(")");
+			query.seekParameters.put(PARAMETER + i, values[i]);
+		}
+		seek.append(")");
+		query.seek = seek.toString();
+	}
+
+	/**
+	 * Makes a cursor pointing after the given row
+	 * @param row the last row returned
+	 * @return the cursor, or null if one of the sort values is null
+	 */
+	public String makeCursor(Model row) {
+		StringBuilder cursor = new StringBuilder();
+		append(cursor, getOrder());
+		for(int i=0;i<columns.length;i++){
+			Object value;
+			try {
+				value = properties[i] != null ? properties[i].field.get(row) : row._key();
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			if(value == null)
+				return null;
+			append(cursor, TypeConverter.format(value));
+		}
+		try {
+			String ret = Codec.encodeBASE64(cursor.toString().getBytes("UTF-8"));
+			// make it URL-safe
+			return ret.replace('+', '-').replace('/', '_').replace("=", "");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void append(StringBuilder cursor, String value) {
+		cursor.append(value.length()).append(':').append(value);
+	}
+
+	private Object[] decode(String after) {
+		String cursor;
+		try {
+			String base64 = after.replace('-', '+').replace('_', '/');
+			while(base64.length() % 4 != 0)
+				base64 += "=";
+			cursor = new String(Codec.decodeBASE64(base64), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		List<String> values = new ArrayList<String>(columns.length + 1);
+		int i = 0;
+		while(i < cursor.length()){
+			int colon = cursor.indexOf(':', i);
+			if(colon == -1)
+				throw new IllegalArgumentException("Invalid cursor");
+			int length;
+			try{
+				length = Integer.parseInt(cursor.substring(i, colon));
+			}catch(NumberFormatException x){
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+			if(length < 0 || colon + 1 + length > cursor.length())
+				throw new IllegalArgumentException("Invalid cursor");
+			values.add(cursor.substring(colon + 1, colon + 1 + length));
+			i = colon + 1 + length;
+		}
+		if(values.size() != columns.length + 1 || !values.get(0).equals(getOrder()))
+			throw new IllegalArgumentException("Cursor does not match sort order: "+getOrder());
+		Object[] ret = new Object[columns.length];
+		for(int c=0;c<columns.length;c++)
+			ret[c] = TypeConverter.parse(types[c], values.get(c + 1));
+		return ret;
+	}
+}
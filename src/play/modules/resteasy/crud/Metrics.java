@@ -0,0 +1,94 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.List;
+
+import play.Logger;
+import play.Play;
+
+/**
+ * Gives access to the {@link CRUDMetrics} implementation of the application. This is looked up once, until 
+ * {@link #reset()} is called.
+ */
+public class Metrics {
+
+	private static volatile CRUDMetrics metrics;
+
+	/**
+	 * Logs every metric at DEBUG level, if it is enabled
+	 */
+	static class DebugMetrics implements CRUDMetrics {
+		@Override
+		public void time(String endpoint, Class<?> model, String timer, long nanos) {
+			if(Logger.isDebugEnabled())
+				Logger.debug("%s %s %s: %sus", model.getSimpleName(), endpoint, timer, nanos / 1000);
+		}
+
+		@Override
+		public void count(String endpoint, Class<?> model, String counter, long value) {
+			if(Logger.isDebugEnabled())
+				Logger.debug("%s %s %s: %s", model.getSimpleName(), endpoint, counter, value);
+		}
+	}
+
+	/**
+	 * @return the metrics implementation
+	 */
+	public static CRUDMetrics get() {
+		CRUDMetrics ret = metrics;
+		if(ret == null){
+			ret = lookup();
+			metrics = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Records the time elapsed since the given start
+	 * @param endpoint the endpoint name
+	 * @param model the model type
+	 * @param timer the timer name
+	 * @param start the start time, from {@link System#nanoTime()}
+	 */
+	public static void time(String endpoint, Class<?> model, String timer, long start) {
+		get().time(endpoint, model, timer, System.nanoTime() - start);
+	}
+
+	/**
+	 * Forgets the metrics implementation, called when the application is reloaded
+	 */
+	public static void reset() {
+		metrics = null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static CRUDMetrics lookup() {
+		List<Class> classes = Play.classloader.getAssignableClasses(CRUDMetrics.class);
+		if(classes.isEmpty())
+			return new DebugMetrics();
+		try {
+			return (CRUDMetrics) classes.get(0).newInstance();
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
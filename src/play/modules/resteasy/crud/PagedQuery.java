@@ -25,12 +25,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.Query;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.Session;
+import org.hibernate.ejb.HibernateQuery;
 
 import play.Logger;
+import play.db.Model;
 import play.db.jpa.JPA;
 
 /**
@@ -41,13 +47,54 @@ import play.db.jpa.JPA;
  */
 public class PagedQuery<T> {
 	private String hql;
+	/**
+	 * The sort order, which is validated and canonical, and takes precedence over {@link #order}
+	 */
+	public Sort sort;
+	/**
+	 * A raw ORDER BY clause, only for trusted HQL: use {@link #sort} for anything coming from a request
+	 */
 	public String order;
 	public String group;
 	public Map<String, Object> parameters = new HashMap<String,Object>();
 	public String search;
 	public List<String> searchFields = new ArrayList<String>();
+	/**
+	 * HQL predicates for search fields that are not matched with {@link SearchMode#CONTAINS}
+	 */
+	public Map<String, String> searchPredicates = new HashMap<String, String>();
+	/**
+	 * Conditions on properties, which apply to the select, count and delete queries alike
+	 */
+	public List<Filter> filters = new ArrayList<Filter>();
 	public Long start;
 	public Long limit;
+	/**
+	 * Extra condition for keyset paging, only applied to the select query and not to the count
+	 */
+	public String seek;
+	/**
+	 * Parameters for the keyset paging condition
+	 */
+	public Map<String, Object> seekParameters = new HashMap<String,Object>();
+	/**
+	 * Whether the select and count queries should use the Hibernate query cache
+	 */
+	public boolean cacheable;
+	/**
+	 * The query cache region, or null for the default region
+	 */
+	public String cacheRegion;
+	/**
+	 * The properties to select, or null to select whole entities. This requires a base HQL query that
+	 * starts with its FROM clause, and the results are sparse entities made by the projection.
+	 */
+	public Projection projection;
+	/**
+	 * The associations to fetch along with whole entities, or null. Its joins require a base HQL query that
+	 * aliases its root entity as {@link FetchPlan#ALIAS}. Collections are not fetched for streamed results.
+	 */
+	public FetchPlan fetchPlan;
 	private Long count;
 
 	public PagedQuery(String hql){
@@ -66,57 +113,253 @@ public class PagedQuery<T> {
 		return this;
 	}
 
-	private String getHQLQuery(boolean forSelect){
-		String hql = this.hql;
-		if (!StringUtils.isEmpty(search) && !searchFields.isEmpty()) {
-			if (hql.toLowerCase().contains(" where ")) {
-				hql += " AND (";
-			} else {
-				hql += " WHERE (";
+	public PagedQuery<T> searchField(String field, SearchMode mode, String fullTextPredicate){
+		this.searchFields.add(field);
+		if(mode != SearchMode.CONTAINS)
+			this.searchPredicates.put(field, mode.predicate(field, fullTextPredicate));
+		return this;
+	}
+
+	public PagedQuery<T> filter(Filter filter){
+		this.filters.add(filter);
+		return this;
+	}
+
+	/**
+	 * Name prefix of the HQL parameters holding the filter values
+	 */
+	public static final String FILTER_PARAMETER = "_filter";
+
+	/**
+	 * The HQL queries for a given query shape
+	 */
+	private static class Shape {
+		final String filter;
+		final String select;
+		final String count;
+		final boolean usesSearch;
+		final boolean usesPrefix;
+
+		Shape(String filter, String select, String count) {
+			this.filter = filter;
+			this.select = select;
+			this.count = count;
+			this.usesSearch = filter.contains(":" + SearchMode.SEARCH_PARAMETER);
+			this.usesPrefix = filter.contains(":" + SearchMode.PREFIX_PARAMETER);
+		}
+	}
+
+	/**
+	 * Maximum number of query shapes we remember
+	 */
+	public static final int MAX_SHAPES = 1000;
+
+	private static final Map<String, Shape> shapes = new ConcurrentHashMap<String, Shape>();
+
+	/**
+	 * Forgets every query shape, called when the application is reloaded
+	 */
+	public static void clearCache() {
+		shapes.clear();
+	}
+
+	private boolean hasSearch() {
+		return !StringUtils.isEmpty(search) && !searchFields.isEmpty();
+	}
+
+	/**
+	 * Gets the HQL for this query, which only depends on the base HQL, the search fields if there is a search, 
+	 * the filtered properties and operators, and the keyset condition, grouping, order, projection and joins. We build it once per shape, which also means we always
+	 * pass the same strings to Hibernate and hit its query plan cache.
+	 */
+	private Shape getShape() {
+		boolean hasSearch = hasSearch();
+		StringBuilder key = new StringBuilder(hql);
+		if(hasSearch){
+			for(String field : searchFields){
+				key.append('\0').append(field);
+				String predicate = searchPredicates.get(field);
+				if(predicate != null)
+					key.append('\1').append(predicate);
 			}
+		}
+		for(Filter filter : filters)
+			key.append('\3').append(filter.getShapeKey());
+		key.append('\2');
+		if(!StringUtils.isEmpty(seek))
+			key.append(seek);
+		key.append('\2');
+		if(!StringUtils.isEmpty(group))
+			key.append(group);
+		key.append('\2');
+		String order = getOrder();
+		if(!StringUtils.isEmpty(order))
+			key.append(order);
+		key.append('\2');
+		if(projection != null)
+			key.append(projection.getSelect());
+		else if(fetchPlan != null)
+			key.append(fetchPlan.getJoinClause());
+		String shapeKey = key.toString();
+		Shape shape = shapes.get(shapeKey);
+		if(shape == null){
+			shape = makeShape(hasSearch);
+			if(shapes.size() >= MAX_SHAPES)
+				shapes.clear();
+			shapes.put(shapeKey, shape);
+		}
+		return shape;
+	}
+
+	private String getOrder() {
+		return sort != null ? sort.getOrder() : order;
+	}
+
+	private Shape makeShape(boolean hasSearch) {
+		StringBuilder filter = new StringBuilder(hql);
+		boolean hasWhere = indexOfIgnoreCase(hql, " where ") != -1;
+		if (hasSearch) {
+			filter.append(hasWhere ? " AND (" : " WHERE (");
+			hasWhere = true;
 			boolean first = true;
 			for (String field : searchFields) {
 				if (!first) {
-					hql += " OR ";
+					filter.append(" OR ");
 				} else
 					first = false;
-				hql += "LOCATE(lower(:_search), lower(" + field + ")) > 0";
+				String predicate = searchPredicates.get(field);
+				if(predicate == null)
+					predicate = SearchMode.CONTAINS.predicate(field, null);
+				filter.append(predicate);
 			}
-			hql += ")";
-			parameters.put("_search", search);
+			filter.append(")");
 		}
-		if(forSelect && !StringUtils.isEmpty(group))
-			hql += " GROUP BY " +group;
-		if(forSelect && !StringUtils.isEmpty(order))
-			hql += " ORDER BY " +order;
-		return hql;
-	}
-
-	private Query getCountQuery() {
-		String hql = getHQLQuery(false);
-		hql = hql.trim();
+		for(int i=0;i<filters.size();i++){
+			filter.append(hasWhere ? " AND " : " WHERE ");
+			hasWhere = true;
+			filter.append(filters.get(i).predicate(FILTER_PARAMETER + i));
+		}
+		StringBuilder select = new StringBuilder();
+		if(projection != null)
+			select.append("SELECT ").append(projection.getSelect()).append(' ');
+		select.append(filter);
+		// join fetches go right after the base FROM clause, and never in the count
+		if(projection == null && fetchPlan != null && !fetchPlan.getJoins().isEmpty()){
+			int where = indexOfIgnoreCase(hql, " where ");
+			select.insert(select.length() - filter.length() + (where != -1 ? where : hql.length()), fetchPlan.getJoinClause());
+		}
+		if(!StringUtils.isEmpty(seek))
+			select.append(hasWhere ? " AND " : " WHERE ").append(seek);
+		if(!StringUtils.isEmpty(group))
+			select.append(" GROUP BY ").append(group);
+		String order = getOrder();
+		if(!StringUtils.isEmpty(order))
+			select.append(" ORDER BY ").append(order);
 		// FIXME: make this safe
-		int fromClause = hql.toLowerCase().indexOf("from ");
+		String countFrom = filter.toString().trim();
+		int fromClause = indexOfIgnoreCase(countFrom, "from ");
 		String count;
 		if(StringUtils.isEmpty(group))
 			count = "COUNT(*) ";
 		else{
 			count = "COUNT(DISTINCT "+group+") ";
 		}
-		hql = "SELECT "+count + hql.substring(fromClause);
-		return getQuery(hql);
+		return new Shape(filter.toString(), select.toString(), "SELECT "+count + countFrom.substring(fromClause));
+	}
+
+	private static int indexOfIgnoreCase(String string, String sought) {
+		for(int i=0;i<=string.length() - sought.length();i++){
+			if(string.regionMatches(true, i, sought, 0, sought.length()))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the shape of this query and sets the search and filter parameters it uses
+	 */
+	private Shape prepare(){
+		Shape shape = getShape();
+		for(int i=0;i<filters.size();i++)
+			filters.get(i).bind(parameters, FILTER_PARAMETER + i);
+		if(hasSearch()){
+			// only set the parameters we use
+			if(shape.usesSearch)
+				parameters.put(SearchMode.SEARCH_PARAMETER, search);
+			if(shape.usesPrefix)
+				parameters.put(SearchMode.PREFIX_PARAMETER, SearchMode.prefix(search));
+		}
+		return shape;
+	}
+
+	private String getHQLQuery(boolean forSelect){
+		Shape shape = prepare();
+		return forSelect ? shape.select : shape.filter;
+	}
+
+	private String getCountHQLQuery() {
+		return prepare().count;
+	}
+
+	private Query getCountQuery() {
+		return setCacheHints(getQuery(getCountHQLQuery()));
+	}
+
+	/**
+	 * Gets a key that identifies the count query, made of its HQL and parameters, for caching counts.
+	 */
+	public String getCountKey() {
+		StringBuilder key = new StringBuilder(getCountHQLQuery());
+		appendParameters(key, parameters);
+		return key.toString();
+	}
+
+	/**
+	 * Gets a key that identifies the select query, made of its HQL, parameters and paging, for caching pages.
+	 */
+	public String getCacheKey() {
+		StringBuilder key = new StringBuilder(getHQLQuery(true));
+		appendParameters(key, parameters);
+		if(!StringUtils.isEmpty(seek))
+			appendParameters(key, seekParameters);
+		key.append(" start=").append(start).append(" limit=").append(limit);
+		return key.toString();
+	}
+
+	private static void appendParameters(StringBuilder key, Map<String, Object> parameters) {
+		for(Entry<String, Object> entry : new TreeMap<String, Object>(parameters).entrySet())
+			key.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
 	}
 
 	private Query getQuery() {
-		return getQuery(getHQLQuery(true));
+		Query query = getQuery(getHQLQuery(true));
+		if(!StringUtils.isEmpty(seek)){
+			for(Entry<String, Object> entry : seekParameters.entrySet()){
+				query.setParameter(entry.getKey(), entry.getValue());
+				if(Logger.isTraceEnabled())
+					Logger.trace(" Query param %s => %s", entry.getKey(), entry.getValue());
+			}
+		}
+		return query;
+	}
+
+	private Query setCacheHints(Query query) {
+		if(cacheable){
+			query.setHint("org.hibernate.cacheable", Boolean.TRUE);
+			if(cacheRegion != null)
+				query.setHint("org.hibernate.cacheRegion", cacheRegion);
+		}
+		return query;
 	}
 
 	private Query getQuery(String hql) {
-		Logger.info("Making HQL query: %s", hql);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Making HQL query: %s", hql);
 		Query query = JPA.em().createQuery(hql);
 		for(Entry<String, Object> entry : parameters.entrySet()){
 			query.setParameter(entry.getKey(), entry.getValue());
-			Logger.info(" Query param %s => %s", entry.getKey(), entry.getValue());
+			if(Logger.isTraceEnabled())
+				Logger.trace(" Query param %s => %s", entry.getKey(), entry.getValue());
 		}
 		return query;
 	}
@@ -129,12 +372,64 @@ public class PagedQuery<T> {
 		return count;
 	}
 	
+	/**
+	 * Checks if we can set a {@link #projection} on this query: its base HQL must not have a select clause
+	 */
+	public boolean isProjectable(){
+		return hql.trim().regionMatches(true, 0, "from ", 0, 5);
+	}
+
+	/**
+	 * Checks if this query has any condition, so that it does not match every entity
+	 */
+	public boolean isFiltered(){
+		return hasSearch() || !filters.isEmpty() || indexOfIgnoreCase(hql, " where ") != -1;
+	}
+
+	/**
+	 * Deletes every entity this query matches with a single HQL DELETE, without loading them. The order,
+	 * grouping, keyset condition and paging are ignored.
+	 * @return the number of entities deleted
+	 */
+	public int executeDelete(){
+		return getQuery("DELETE " + getHQLQuery(false)).executeUpdate();
+	}
+
+	@SuppressWarnings("unchecked")
 	public List<T> getResultList(){
+		Query query = setCacheHints(getQuery());
+		if(start != null)
+			query.setFirstResult(start.intValue());
+		if(limit != null)
+			query.setMaxResults(limit.intValue());
+		if(projection == null){
+			List<T> ret = query.getResultList();
+			if(fetchPlan != null)
+				fetchPlan.fetch((List<? extends Model>) ret, true);
+			return ret;
+		}
+		List<?> rows = query.getResultList();
+		List<T> ret = new ArrayList<T>(rows.size());
+		for(Object row : rows)
+			ret.add((T) projection.fromRow(row));
+		return ret;
+	}
+
+	/**
+	 * Gets the results as a {@link StreamedList}, which loads them from the database as it is iterated
+	 * @param batchSize the number of rows to fetch at once, after which the session is cleared
+	 */
+	public List<T> getStreamedResultList(int batchSize){
 		Query query = getQuery();
 		if(start != null)
 			query.setFirstResult(start.intValue());
 		if(limit != null)
 			query.setMaxResults(limit.intValue());
-		return query.getResultList();
+		org.hibernate.Query hibernateQuery = ((HibernateQuery) query).getHibernateQuery();
+		// we are not going to modify these, so spare Hibernate the snapshots and dirty checks
+		hibernateQuery.setReadOnly(true);
+		hibernateQuery.setFetchSize(batchSize);
+		Session session = (Session) JPA.em().getDelegate();
+		return new StreamedList<T>(hibernateQuery.scroll(ScrollMode.FORWARD_ONLY), session, batchSize, projection);
 	}
 }
@@ -0,0 +1,189 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * A sparse document for partial updates: only the properties it contains are updated. It uses the same
+ * XML or JSON mapping as the model itself, but only for user-editable properties of simple types 
+ * (see {@link #isPatchable(CRUDProperty)}). An XML element with <tt>xsi:nil="true"</tt> or a JSON null 
+ * sets the property to null.
+ */
+public class PatchDocument {
+
+	private final CRUDModel model;
+	private final Map<CRUDProperty, Object> values = new LinkedHashMap<CRUDProperty, Object>();
+
+	private PatchDocument(CRUDModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Parses a patch document
+	 * @param model the model to patch
+	 * @param mediaType the document media type, JSON if its subtype ends with "json", XML otherwise
+	 * @param body the document
+	 * @return the parsed document
+	 * @throws IllegalArgumentException if the document is malformed, or refers to a property that cannot be patched
+	 */
+	public static PatchDocument parse(CRUDModel model, MediaType mediaType, String body) {
+		PatchDocument ret = new PatchDocument(model);
+		if(mediaType != null && mediaType.getSubtype().endsWith("json"))
+			ret.parseJSON(body);
+		else
+			ret.parseXML(body);
+		return ret;
+	}
+
+	/**
+	 * Checks if a property can be set by a patch document
+	 * @param property the property
+	 * @return true if the property is user-editable and has a type {@link TypeConverter} supports
+	 */
+	public static boolean isPatchable(CRUDProperty property) {
+		Class<?> type = property.field.getType();
+		return property.isEditable() 
+			&& (property.fieldType != null || type.isEnum() || type == Boolean.TYPE);
+	}
+
+	/**
+	 * @return the new property values, in document order
+	 */
+	public Map<CRUDProperty, Object> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * @return true if this document does not set any property
+	 */
+	public boolean isEmpty() {
+		return values.isEmpty();
+	}
+
+	private void set(String xmlName, String value) {
+		CRUDProperty property = model.getPropertyByXmlName(xmlName);
+		if(property == null)
+			throw new IllegalArgumentException("No such property: "+xmlName);
+		if(!isPatchable(property))
+			throw new IllegalArgumentException("Property cannot be patched: "+xmlName);
+		if(values.containsKey(property))
+			throw new IllegalArgumentException("Duplicate property: "+xmlName);
+		if(value == null && property.field.getType().isPrimitive())
+			throw new IllegalArgumentException("Property cannot be null: "+xmlName);
+		values.put(property, TypeConverter.parse(property.field.getType(), value));
+	}
+
+	private void parseJSON(String body) {
+		JsonElement root;
+		try{
+			root = new JsonParser().parse(body);
+		}catch(JsonParseException x){
+			throw new IllegalArgumentException("Invalid JSON document: "+x.getMessage());
+		}
+		if(!root.isJsonObject())
+			throw new IllegalArgumentException("Patch document must be a JSON object");
+		JsonObject object = root.getAsJsonObject();
+		// accept the entity wrapped in its root element like we send it, or not
+		JsonElement wrapped = object.get(model.xmlName);
+		if(wrapped != null && wrapped.isJsonObject() && object.entrySet().size() == 1)
+			object = wrapped.getAsJsonObject();
+		for(Entry<String, JsonElement> entry : object.entrySet()){
+			String name = entry.getKey();
+			// attributes are prefixed with @ in the mapped convention
+			if(name.startsWith("@"))
+				name = name.substring(1);
+			JsonElement value = entry.getValue();
+			if(value.isJsonNull())
+				set(name, null);
+			else if(value.isJsonPrimitive())
+				set(name, value.getAsString());
+			else
+				throw new IllegalArgumentException("Property cannot be patched: "+name);
+		}
+	}
+
+	private void parseXML(String body) {
+		Document document;
+		try{
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setExpandEntityReferences(false);
+			factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			document = builder.parse(new InputSource(new StringReader(body)));
+		}catch(ParserConfigurationException x){
+			throw new RuntimeException(x);
+		}catch(SAXException x){
+			throw new IllegalArgumentException("Invalid XML document: "+x.getMessage());
+		}catch(IOException x){
+			throw new RuntimeException(x);
+		}
+		Element root = document.getDocumentElement();
+		NamedNodeMap attributes = root.getAttributes();
+		for(int i=0;i<attributes.getLength();i++){
+			Attr attribute = (Attr) attributes.item(i);
+			if(attribute.getNamespaceURI() != null)
+				continue;
+			set(attribute.getLocalName(), attribute.getValue());
+		}
+		for(Node node = root.getFirstChild(); node != null; node = node.getNextSibling()){
+			if(node.getNodeType() != Node.ELEMENT_NODE)
+				continue;
+			Element element = (Element) node;
+			if(isNil(element))
+				set(element.getLocalName(), null);
+			else if(element.getElementsByTagName("*").getLength() > 0)
+				throw new IllegalArgumentException("Property cannot be patched: "+element.getLocalName());
+			else
+				set(element.getLocalName(), element.getTextContent());
+		}
+	}
+
+	private static boolean isNil(Element element) {
+		String nil = element.getAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil");
+		return "true".equals(nil) || "1".equals(nil);
+	}
+}
@@ -8,11 +8,14 @@ import javax.el.VariableMapper;
 import org.jboss.resteasy.links.ELProvider;
 
 public class PlayELProvider implements ELProvider {
+
+	// resteasy-links gives every context a new and empty function mapper, so a single mapper of ours, which
+	// only resolves static methods, can be shared by every context
+	private static final FunctionMapper FUNCTION_MAPPER = new PlayFunctionMapper(null);
+
 	public ELContext getContext(final ELContext ctx) {
 		return new ELContext() {
 
-			private PlayFunctionMapper functionMapper;
-
 			@Override
 			public ELResolver getELResolver() {
 				return ctx.getELResolver();
@@ -20,10 +23,7 @@ public class PlayELProvider implements ELProvider {
 
 			@Override
 			public FunctionMapper getFunctionMapper() {
-				if (functionMapper == null)
-					functionMapper = new PlayFunctionMapper(ctx
-							.getFunctionMapper());
-				return functionMapper;
+				return FUNCTION_MAPPER;
 			}
 
 			@Override
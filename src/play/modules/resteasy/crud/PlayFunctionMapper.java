@@ -1,19 +1,12 @@
 package play.modules.resteasy.crud;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import javax.el.FunctionMapper;
 
 import org.jboss.el.lang.ExtendedFunctionMapper;
 
-import play.Logger;
-import play.Play;
-import play.classloading.ApplicationClasses.ApplicationClass;
 import play.exceptions.UnexpectedException;
-import play.modules.resteasy.crud.CRUDSecure.CRUDSecurity;
 
 /**
  * Resolves Seam Security EL functions, s:hasRole() and s:hasPermission()
@@ -25,8 +18,6 @@ public class PlayFunctionMapper extends ExtendedFunctionMapper
 {
 	private FunctionMapper functionMapper;
 
-	private static Map<String, Method> methods;
-
 	public PlayFunctionMapper(FunctionMapper functionMapper)
 	{
 		this.functionMapper = functionMapper;
@@ -37,8 +28,7 @@ public class PlayFunctionMapper extends ExtendedFunctionMapper
 	{
 		if ( "p".equals(prefix) )
 		{
-			init();
-			return methods.get(localName);
+			return getMethod(localName);
 		}
 		else if (functionMapper != null)
 		{
@@ -55,8 +45,7 @@ public class PlayFunctionMapper extends ExtendedFunctionMapper
 	{
 		if ( "p".equals(prefix) )
 		{
-			init();
-			return methods.get(localName);
+			return getMethod(localName);
 		}
 		else if (functionMapper != null)
 		{
@@ -68,29 +57,28 @@ public class PlayFunctionMapper extends ExtendedFunctionMapper
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private static void init() {
-		if(methods != null)
-			return;
-		methods = new HashMap<String,Method>();
-		List<ApplicationClass> classes = Play.classes.getAssignableClasses(CRUDSecurity.class);
-		Class<CRUDSecurity> security;
-		if(classes.isEmpty()){
-			Logger.warn("No CRUDSecurity implementation found, all security checks will be denied");
-			security = CRUDSecurity.class;
-		}else
-			security = (Class<CRUDSecurity>) classes.get(0).javaClass;
+	/**
+	 * Binds p:hasPermission and p:hasRole to {@link CRUDSecure}, so that EL constraints share its per-request
+	 * permission cache
+	 */
+	private static Method getMethod(String localName) {
+		if("hasPermission".equals(localName))
+			return HAS_PERMISSION;
+		if("hasRole".equals(localName))
+			return HAS_ROLE;
+		return null;
+	}
+
+	private static final Method HAS_PERMISSION;
+	private static final Method HAS_ROLE;
+	static {
 		try {
-			methods.put("hasPermission", security.getMethod("hasPermission", Object.class, String.class));
-			methods.put("hasRole", security.getMethod("hasRole", String.class));
-		} catch (SecurityException e) {
-			throw new UnexpectedException(e);
+			HAS_PERMISSION = CRUDSecure.class.getMethod("hasPermission", Object.class, String.class);
+			HAS_ROLE = CRUDSecure.class.getMethod("hasRole", String.class);
 		} catch (NoSuchMethodException e) {
-			Logger.warn("Missing function in your CRUDSecurity subclass: "+e.getMessage());
 			throw new UnexpectedException(e);
 		}
-	}    
-
+	}
 
 }
 
@@ -0,0 +1,202 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import play.db.Model;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * A sparse fieldset: the properties a client asked for with the <tt>fields</tt> parameter. We only select 
+ * these columns, with an HQL projection, and copy them into new detached entities whose other properties
+ * are left null, so that only the requested properties are marshalled.
+ * 
+ * Only properties with a {@link CRUDField} annotation and a simple type (see {@link Type}) can be requested. 
+ * The entity key is always selected so that we can link to the entities. Primitive properties cannot be null,
+ * so they would be marshalled with their default value if left out: every primitive property must be 
+ * selected, and models with primitive properties that cannot be selected do not support sparse fieldsets.
+ */
+public class Projection {
+
+	private final CRUDModel model;
+	private final CRUDProperty[] properties;
+	private final Field[] cleared;
+	private final String select;
+
+	private Projection(CRUDModel model, Set<CRUDProperty> properties) {
+		this.model = model;
+		this.properties = properties.toArray(new CRUDProperty[properties.size()]);
+		List<Field> cleared = new ArrayList<Field>();
+		for(CRUDProperty property : model.properties){
+			property.field.setAccessible(true);
+			int modifiers = property.field.getModifiers();
+			if(!properties.contains(property) && !property.field.getType().isPrimitive()
+					&& !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
+				cleared.add(property.field);
+		}
+		this.cleared = cleared.toArray(new Field[cleared.size()]);
+		StringBuilder select = new StringBuilder();
+		for(CRUDProperty property : properties){
+			if(select.length() > 0)
+				select.append(", ");
+			select.append(property.name);
+		}
+		this.select = select.toString();
+	}
+
+	/**
+	 * Parses a sparse fieldset
+	 * @param model the model metadata
+	 * @param fields a comma-separated list of property names
+	 * @return the projection, or null if no field is given
+	 * @throws IllegalArgumentException if a field is not a property that can be selected, or if a primitive
+	 * property is left out
+	 */
+	public static Projection parse(CRUDModel model, String fields) {
+		if(StringUtils.isBlank(fields))
+			return null;
+		Set<CRUDProperty> properties = new LinkedHashSet<CRUDProperty>();
+		properties.add(getKeyProperty(model));
+		for(String field : StringUtils.split(fields, ',')){
+			field = field.trim();
+			if(field.length() == 0)
+				continue;
+			CRUDProperty property = model.getProperty(field);
+			if(property == null || !isSelectable(property))
+				throw new IllegalArgumentException("Invalid field: "+field);
+			properties.add(property);
+		}
+		// we cannot leave primitives out, and marshalling their default value would be wrong data
+		for(CRUDProperty property : model.properties){
+			if(!property.field.getType().isPrimitive() || Modifier.isStatic(property.field.getModifiers())
+					|| properties.contains(property))
+				continue;
+			if(!isSelectable(property))
+				throw new IllegalArgumentException("Sparse fieldsets are not supported for "+model.model.getName()
+						+" because of its primitive property "+property.name);
+			throw new IllegalArgumentException("Primitive field must be selected: "+property.name);
+		}
+		return new Projection(model, properties);
+	}
+
+	/**
+	 * Checks if a property can be requested in a sparse fieldset
+	 * @param property the property
+	 * @return true if it is handled by the CRUD module and has a simple type
+	 */
+	public static boolean isSelectable(CRUDProperty property) {
+		Class<?> type = property.field.getType();
+		return property.crud != null 
+			&& (property.fieldType != null || type.isEnum() || type == Boolean.TYPE);
+	}
+
+	private static CRUDProperty getKeyProperty(CRUDModel model) {
+		CRUDProperty key = model.getProperty(model.factory.keyName());
+		if(key == null)
+			throw new IllegalArgumentException("Sparse fieldsets are not supported for "+model.model.getName());
+		return key;
+	}
+
+	/**
+	 * Makes a projection that also selects the given properties, for instance the sort columns we need to
+	 * make keyset cursors. These properties need not be selectable by clients.
+	 * @param names the property names
+	 * @return the new projection, or this one if it already selects every given property
+	 * @throws IllegalArgumentException if one of the properties does not exist
+	 */
+	public Projection with(String... names) {
+		Set<CRUDProperty> properties = new LinkedHashSet<CRUDProperty>();
+		Collections.addAll(properties, this.properties);
+		for(String name : names){
+			CRUDProperty property = model.getProperty(name);
+			if(property == null)
+				throw new IllegalArgumentException("Invalid field: "+name);
+			properties.add(property);
+		}
+		if(properties.size() == this.properties.length)
+			return this;
+		return new Projection(model, properties);
+	}
+
+	/**
+	 * @return the HQL select list, the entity key first
+	 */
+	public String getSelect() {
+		return select;
+	}
+
+	/**
+	 * Makes a sparse entity from a row of the projection query
+	 * @param row the row, which is a single value if there is a single column
+	 * @return the sparse entity
+	 */
+	public Model fromRow(Object row) {
+		Object[] values = row instanceof Object[] ? (Object[]) row : new Object[]{row};
+		Model ret = newInstance();
+		try {
+			for(int i=0;i<properties.length;i++){
+				// leave primitives alone rather than fail on null columns
+				if(values[i] != null || !properties[i].field.getType().isPrimitive())
+					properties[i].field.set(ret, values[i]);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	/**
+	 * Makes a sparse copy of an entity that was loaded whole
+	 * @param entity the entity
+	 * @return the sparse entity
+	 */
+	public Model fromEntity(Model entity) {
+		Model ret = newInstance();
+		try {
+			for(CRUDProperty property : properties)
+				property.field.set(ret, property.field.get(entity));
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	private Model newInstance() {
+		try {
+			Model ret = model.model.newInstance();
+			// undo any field initialiser
+			for(Field field : cleared)
+				field.set(ret, null);
+			return ret;
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+
+/**
+ * Checks and copies CRUD properties between two entities of the same model. {@link CRUDEnhancer}
+ * generates a subclass with direct access for every CRUD model whose fields are all public,
+ * otherwise we fall back to one that uses reflection.
+ * 
+ * Both go through the bean getter and setter of a property when the model has them, so that user-defined
+ * accessors still run, and only use the field when there is no accessor.
+ */
+public abstract class PropertyCopier {
+
+	/**
+	 * Finds the first property that is not user-editable but has a value in the given entity
+	 * @param elem the entity to check
+	 * @return the name of that property, or null if every non-editable property is empty
+	 */
+	public abstract String findNonEmptyReadOnlyProperty(Object elem);
+
+	/**
+	 * Copies every user-editable property from one entity to the other
+	 * @param from the entity to copy from
+	 * @param to the entity to copy to
+	 */
+	public abstract void copyEditableProperties(Object from, Object to);
+
+	/**
+	 * Checks if a property value is empty: null or an empty collection
+	 * @param value the property value
+	 * @return true if the value is empty
+	 */
+	public static boolean isEmpty(Object value) {
+		return value == null
+			|| (value instanceof Collection && ((Collection<?>) value).isEmpty());
+	}
+
+	/**
+	 * Checks if we can generate a copier with direct access for the given model
+	 * @param model the model metadata
+	 * @return true if every property field is public and not static, and every accessor is in a public class
+	 */
+	public static boolean canGenerate(CRUDModel model) {
+		if(!Modifier.isPublic(model.model.getModifiers()))
+			return false;
+		Map<String, PropertyDescriptor> accessors = getAccessors(model);
+		for(CRUDProperty property : model.properties){
+			Field field = property.field;
+			int modifiers = field.getModifiers();
+			if(!Modifier.isPublic(modifiers)
+					|| Modifier.isStatic(modifiers)
+					|| Modifier.isFinal(modifiers)
+					|| !Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+				return false;
+			PropertyDescriptor descriptor = accessors.get(property.name);
+			if(descriptor != null 
+					&& (!isInPublicClass(descriptor.getReadMethod()) || !isInPublicClass(descriptor.getWriteMethod())))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isInPublicClass(Method method) {
+		return method == null || Modifier.isPublic(method.getDeclaringClass().getModifiers());
+	}
+
+	/**
+	 * Gets the bean accessors of the CRUD properties, as {@link java.beans.Introspector} finds them
+	 * @param model the model metadata
+	 * @return the property descriptors by property name, only for properties of the same type as their field
+	 */
+	public static Map<String, PropertyDescriptor> getAccessors(CRUDModel model) {
+		PropertyDescriptor[] descriptors;
+		try {
+			descriptors = Introspector.getBeanInfo(model.model).getPropertyDescriptors();
+		} catch (IntrospectionException e) {
+			throw new RuntimeException(e);
+		}
+		Map<String, PropertyDescriptor> ret = new HashMap<String, PropertyDescriptor>();
+		for(PropertyDescriptor descriptor : descriptors){
+			CRUDProperty property = model.getProperty(descriptor.getName());
+			if(property != null && descriptor.getPropertyType() == property.field.getType())
+				ret.put(descriptor.getName(), descriptor);
+		}
+		return ret;
+	}
+
+	static class ReflectionCopier extends PropertyCopier {
+
+		private final Accessor[] readOnly;
+		private final Accessor[] editable;
+
+		ReflectionCopier(CRUDModel model) {
+			Map<String, PropertyDescriptor> accessors = getAccessors(model);
+			List<Accessor> readOnly = new ArrayList<Accessor>();
+			List<Accessor> editable = new ArrayList<Accessor>();
+			for(CRUDProperty property : model.properties){
+				Accessor accessor = new Accessor(property, accessors.get(property.name));
+				if(property.isEditable())
+					editable.add(accessor);
+				else
+					readOnly.add(accessor);
+			}
+			this.readOnly = readOnly.toArray(new Accessor[readOnly.size()]);
+			this.editable = editable.toArray(new Accessor[editable.size()]);
+		}
+
+		@Override
+		public String findNonEmptyReadOnlyProperty(Object elem) {
+			try {
+				for(Accessor accessor : readOnly){
+					if(!isEmpty(accessor.get(elem)))
+						return accessor.name;
+				}
+				return null;
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		@Override
+		public void copyEditableProperties(Object from, Object to) {
+			try {
+				for(Accessor accessor : editable)
+					accessor.set(to, accessor.get(from));
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Reads and writes a property with its accessors, or its field when it has none
+	 */
+	private static class Accessor {
+		final String name;
+		private final Field field;
+		private final Method getter;
+		private final Method setter;
+
+		Accessor(CRUDProperty property, PropertyDescriptor descriptor) {
+			this.name = property.name;
+			this.field = property.field;
+			field.setAccessible(true);
+			this.getter = descriptor != null ? descriptor.getReadMethod() : null;
+			this.setter = descriptor != null ? descriptor.getWriteMethod() : null;
+			if(getter != null)
+				getter.setAccessible(true);
+			if(setter != null)
+				setter.setAccessible(true);
+		}
+
+		Object get(Object target) throws IllegalAccessException, InvocationTargetException {
+			return getter != null ? getter.invoke(target) : field.get(target);
+		}
+
+		void set(Object target, Object value) throws IllegalAccessException, InvocationTargetException {
+			if(setter != null)
+				setter.invoke(target, value);
+			else
+				field.set(target, value);
+		}
+	}
+}
@@ -18,41 +18,55 @@
 */
 package play.modules.resteasy.crud;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.persistence.Query;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.validator.ClassValidator;
 import org.hibernate.validator.InvalidStateException;
 import org.hibernate.validator.InvalidValue;
 import org.hibernate.validator.NotEmpty;
 import org.hibernate.validator.NotNull;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import play.Logger;
 import play.db.Model;
 import play.db.Model.Factory;
-import play.db.Model.Manager;
 import play.db.Model.Property;
+import play.db.jpa.JPA;
+import play.modules.resteasy.crud.CRUDModel.CRUDProperty;
+import play.modules.resteasy.crud.DataTable.SizeType;
 
 /**
  * Your CRUD resource must subclass this to gain automagic resources.
@@ -60,6 +74,19 @@ import play.db.Model.Property;
  * @author Stéphane Épardaud <stef@epardaud.fr>
  */
 public abstract class RESTResource {
+
+	/**
+	 * The permissions the generated CRUD methods check
+	 */
+	private static final String[] CRUD_PERMISSIONS = {"select", "insert", "update", "delete"};
+
+	/**
+	 * The media types of lists, for resources with {@link CRUD#cbor()}
+	 */
+	private static final List<Variant> CBOR_VARIANTS = Variant.mediaTypes(
+			MediaType.APPLICATION_XML_TYPE,
+			MediaType.APPLICATION_JSON_TYPE,
+			CBORWriter.APPLICATION_CBOR_TYPE).build();
 	
 	/**
 	 * Queries the permission system for a permission
@@ -68,7 +95,11 @@ public abstract class RESTResource {
 	 * @return true if the current user has this permission, false otherwise
 	 */
 	protected boolean hasPermission(Object target, String name){
-		return CRUDSecure.hasPermission(target, name);
+		long start = System.nanoTime();
+		boolean ret = CRUDSecure.hasPermission(target, name);
+		if(target != null)
+			Metrics.time(name, target instanceof Class ? (Class<?>) target : target.getClass(), CRUDMetrics.PERMISSION, start);
+		return ret;
 	}
 
 	/**
@@ -241,7 +272,8 @@ public abstract class RESTResource {
 	 * @param code the status code
 	 */
 	protected Response status(int code){
-		Logger.info("Returning code %s", code);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Returning code %s", code);
 		return Response.status(code).build();
 	}
 	
@@ -262,7 +294,8 @@ public abstract class RESTResource {
 	 * @param entity the response entity
 	 */
 	protected Response status(int code, Object entity){
-		Logger.info("Returning code %s: %s", code, entity);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Returning code %s: %s", code, entity);
 		return Response.status(code).entity(entity).build();
 	}
 
@@ -272,7 +305,8 @@ public abstract class RESTResource {
 	 * @param location the Location header
 	 */
 	protected Response status(int code, URI location){
-		Logger.info("Returning code %s: %s", code, location);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Returning code %s: %s", code, location);
 		return Response.status(code).location(location).build();
 	}
 
@@ -334,18 +368,146 @@ public abstract class RESTResource {
 
 	/**
 	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
-	 * right path and parameters for getting a single entity.
+	 * right path and parameters for getting a single entity. The <tt>fields</tt> query parameter selects
+	 * a sparse fieldset, as in {@link DataTableQuery#fields}.
 	 * @param model the model type
 	 * @param id the entity id
 	 * @return a response with entity
 	 */
 	public <T extends Model> Response get(Class<T> model, Object id) {
-		Factory factory = Manager.factoryFor(model);
-		@SuppressWarnings("unchecked")
-		T entity = (T)factory.findById(id);
+		CRUDModel crudModel = CRUDModel.get(model);
+		// if permissions do not need the entity, revalidating only needs its version
+		if(hasRequestHeader(HttpHeaders.IF_NONE_MATCH) && EntityTags.isVersioned(crudModel) 
+				&& !CRUDSecure.hasInstancePermissions()){
+			checkPermission(model, "select");
+			Query query = JPA.em().createQuery("SELECT "+crudModel.version.getName()+" FROM "+model.getSimpleName()
+					+" WHERE "+crudModel.factory.keyName()+" = :id");
+			query.setParameter("id", id);
+			setCacheHints(query, model);
+			List<?> versions = query.getResultList();
+			if(versions.isEmpty())
+				checkNotFound(null, "Entity of type %s with id of %s could not be found", model.getName(), id);
+			Response notModified = evaluatePreconditions(EntityTags.forVersion(versions.get(0)));
+			if(notModified != null)
+				return notModified;
+		}
+		Projection projection = makeProjection(crudModel, getQueryParameter("fields"));
+		// permissions may need the properties we do not select
+		boolean project = projection != null && !CRUDSecure.hasInstancePermissions();
+		long start = System.nanoTime();
+		Model entity = project ? findProjected(model, projection, id) : crudModel.factory.findById(id);
+		Metrics.time("get", model, CRUDMetrics.QUERY, start);
 		checkNotFound(entity, "Entity of type %s with id of %s could not be found", model.getName(), id);
 		checkPermission(entity, "select");
-		return ok(entity);
+		if(projection != null && !project)
+			entity = projection.fromEntity(entity);
+		else if(!project){
+			FetchPlan fetchPlan = getFetchPlan(model);
+			if(fetchPlan != null)
+				fetchPlan.fetch(Collections.singletonList(entity), false);
+		}
+		EntityTag tag = EntityTags.forEntity(crudModel, entity);
+		if(tag == null)
+			return ok(entity);
+		Response notModified = evaluatePreconditions(tag);
+		if(notModified != null)
+			return notModified;
+		return Response.ok(entity).tag(tag).build();
+	}
+
+	/**
+	 * Makes the projection for a sparse fieldset of a single entity, which also selects the version so that
+	 * we can tag it
+	 * @param model the model metadata
+	 * @param fields the requested fields, or null
+	 * @return the projection, or null if no field was requested
+	 */
+	protected Projection makeProjection(CRUDModel model, String fields) {
+		try{
+			Projection projection = Projection.parse(model, fields);
+			if(projection != null && model.version != null)
+				projection = projection.with(model.version.getName());
+			return projection;
+		}catch(IllegalArgumentException x){
+			throw toThrowable(badRequest("%s", x.getMessage()));
+		}
+	}
+
+	/**
+	 * Loads a sparse entity
+	 * @param model the model type
+	 * @param projection the properties to select
+	 * @param id the entity id
+	 * @return the sparse entity, or null if there is no such entity
+	 */
+	protected <T extends Model> Model findProjected(Class<T> model, Projection projection, Object id) {
+		Query query = JPA.em().createQuery("SELECT "+projection.getSelect()+" FROM "+model.getSimpleName()
+				+" WHERE "+CRUDModel.get(model).factory.keyName()+" = :id");
+		query.setParameter("id", id);
+		setCacheHints(query, model);
+		List<?> rows = query.getResultList();
+		return rows.isEmpty() ? null : projection.fromRow(rows.get(0));
+	}
+
+	/**
+	 * Lets the given query use the query cache, if the cache policy of this resource allows it
+	 * @param query the query
+	 * @param model the model type the query selects from
+	 */
+	protected <T> void setCacheHints(Query query, Class<T> model) {
+		if(getCachePolicy() != CachePolicy.NONE){
+			query.setHint("org.hibernate.cacheable", Boolean.TRUE);
+			query.setHint("org.hibernate.cacheRegion", getCacheRegion(model));
+		}
+	}
+
+	/**
+	 * Evaluates the conditional headers of the current request against the current entity tag of a resource
+	 * @param tag the entity tag, can be null if the resource has none
+	 * @return a NOT_MODIFIED or PRECONDITION_FAILED response if the request should not proceed, or null
+	 */
+	protected Response evaluatePreconditions(EntityTag tag) {
+		if(tag == null)
+			return null;
+		Request request = ResteasyProviderFactory.getContextData(Request.class);
+		if(request == null)
+			return null;
+		ResponseBuilder builder = request.evaluatePreconditions(tag);
+		return builder != null ? builder.build() : null;
+	}
+
+	/**
+	 * Checks if the current request has the given header
+	 * @param name the header name
+	 */
+	protected boolean hasRequestHeader(String name) {
+		HttpHeaders headers = ResteasyProviderFactory.getContextData(HttpHeaders.class);
+		if(headers == null)
+			return false;
+		List<String> values = headers.getRequestHeader(name);
+		return values != null && !values.isEmpty();
+	}
+
+	/**
+	 * Gets a query parameter of the current request
+	 * @param name the parameter name
+	 * @return the first value of the parameter, or null if it is absent or there is no current request
+	 */
+	protected String getQueryParameter(String name) {
+		UriInfo uriInfo = ResteasyProviderFactory.getContextData(UriInfo.class);
+		if(uriInfo == null)
+			return null;
+		return uriInfo.getQueryParameters().getFirst(name);
+	}
+
+	/**
+	 * Returns a NO_CONTENT response with the given entity tag
+	 * @param tag the new entity tag of the resource, or null
+	 */
+	protected Response noContent(EntityTag tag) {
+		if(tag == null)
+			return noContent();
+		return Response.noContent().tag(tag).build();
 	}
 
 	/**
@@ -356,15 +518,74 @@ public abstract class RESTResource {
 	 * @return a response with no content
 	 */
 	public <T extends Model> Response delete(Class<T> model, Object id) {
-		Factory factory = Manager.factoryFor(model);
+		CRUDModel crudModel = CRUDModel.get(model);
+		// if we do not need the entity, don't load it
+		if(!CRUDSecure.hasInstancePermissions() && crudModel.bulkDeletable && crudModel.autoCompleteIndexed.isEmpty()){
+			checkPermission(model, "delete");
+			int deleted = JPA.em().createQuery("DELETE FROM "+model.getSimpleName()+" WHERE "+crudModel.factory.keyName()+" = :id")
+				.setParameter("id", id).executeUpdate();
+			if(deleted == 0)
+				checkNotFound(null, "Entity of type %s with id of %s could not be found", model.getName(), id);
+			invalidateCaches(model);
+			return noContent();
+		}
+		Factory factory = crudModel.factory;
 		@SuppressWarnings("unchecked")
 		T entity = (T)factory.findById(id);
 		checkNotFound(entity, "Entity of type %s with id of %s could not be found", model.getName(), id);
 		checkPermission(entity, "delete");
+		Object[] indexed = AutoCompleteIndex.snapshot(model, entity);
 		entity._delete();
+		AutoCompleteIndex.update(model, indexed, null);
+		invalidateCaches(model);
 		return noContent();
 	}
 
+	/**
+	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
+	 * right path and parameters for deleting every entity matching a query. The query must have a search,
+	 * and its paging and sorting are ignored. If permissions only depend on the model class and the model
+	 * is {@link CRUDModel#bulkDeletable} this runs a single HQL DELETE, otherwise entities are loaded and
+	 * deleted in batches.
+	 * @param model the model type
+	 * @param q the query for the entities to delete
+	 * @return a response with no content, and the number of deleted entities in the X-Deleted-Count header
+	 */
+	public <T extends Model> Response deleteAll(Class<T> model, DataTableQuery q) {
+		logQuery(q);
+		PagedQuery<T> query = findPaged(model);
+		if(!StringUtils.isEmpty(q.search))
+			query.search = q.search;
+		applyFilters(model, query, q.filter);
+		if(!query.isFiltered())
+			return badRequest("Refusing to delete every entity of type %s", model.getName());
+		CRUDModel crudModel = CRUDModel.get(model);
+		int deleted;
+		if(!CRUDSecure.hasInstancePermissions() && crudModel.bulkDeletable){
+			checkPermission(model, "delete");
+			deleted = query.executeDelete();
+			AutoCompleteIndex.invalidate(model);
+		}else{
+			deleted = 0;
+			int batchSize = BatchWriter.getBatchSize();
+			BatchWriter writer = new BatchWriter();
+			// the streamed list flushes our deletions as it goes
+			for(T entity : query.getStreamedResultList(batchSize)){
+				if(!hasPermission(entity, "delete"))
+					continue;
+				Object[] indexed = AutoCompleteIndex.snapshot(model, entity);
+				writer.delete(entity);
+				AutoCompleteIndex.update(model, indexed, null);
+				deleted++;
+			}
+			writer.flush();
+		}
+		invalidateCaches(model);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Deleted %s entities of type %s", deleted, model.getName());
+		return Response.noContent().header("X-Deleted-Count", deleted).build();
+	}
+
 	/**
 	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
 	 * right path and parameters for adding an entity.
@@ -372,24 +593,13 @@ public abstract class RESTResource {
 	 * @param elem the new entity
 	 * @return a response with no content
 	 */
-	public <T extends Model> Response add(Class<T> model, final T elem, UriInfo uriInfo) {
+	public <T extends Model> Response add(Class<T> model, T elem, UriInfo uriInfo) {
 		checkPermission(elem, "insert");
 		// check non-editable field
-		walkProperties(model, new PropertyWalker(){
-			@Override
-			public void walk(Property property, Field field, CRUDField crud) {
-				Object newValue;
-				try {
-					newValue = PropertyUtils.getSimpleProperty(elem, property.name);
-				} catch (Exception e) {
-					throw toThrowable(internalError(e, "Failed to get property %s", property.name));
-				}
-				// if that field is not editable, let us barf
-				if(crud == null || !crud.editable())
-					checkEmpty(newValue);
-			}
-		});
+		checkReadOnlyPropertiesEmpty(model, elem);
 		elem._save();
+		AutoCompleteIndex.update(model, null, AutoCompleteIndex.snapshot(model, elem));
+		invalidateCaches(model);
 		// now get the link to the new element
 		UriBuilder uriBuilder = uriInfo.getBaseUriBuilder();
 		URI uri = uriBuilder.path(getClass()).path(getClass(), "get").build(elem._key());
@@ -404,36 +614,378 @@ public abstract class RESTResource {
 	 * @param elem the new values for the entity
 	 * @return a response with no content
 	 */
-	public <T extends Model> Response edit(Class<T> model, Object id, final T elem) {
-		Factory factory = Manager.factoryFor(model);
+	public <T extends Model> Response edit(Class<T> model, Object id, T elem) {
+		CRUDModel crudModel = CRUDModel.get(model);
 		@SuppressWarnings("unchecked")
-		final T elemFromDB = (T)factory.findById(id);
+		T elemFromDB = (T)crudModel.factory.findById(id);
 		checkForUpdate(elem, elemFromDB);
-		// copy every field
-		walkProperties(model, new PropertyWalker(){
-			@Override
-			public void walk(Property property, Field field, CRUDField crud) {
-				Object newValue;
-				try {
-					newValue = PropertyUtils.getSimpleProperty(elem, property.name);
-				} catch (Exception e) {
-					throw toThrowable(internalError(e, "Failed to get property %s", property.name));
+		// reject stale writes
+		Response preconditionFailed = evaluatePreconditions(EntityTags.forEntity(crudModel, elemFromDB));
+		if(preconditionFailed != null)
+			return preconditionFailed;
+		// if a field is not editable, let us barf
+		checkReadOnlyPropertiesEmpty(model, elem);
+		Object[] indexed = AutoCompleteIndex.snapshot(model, elemFromDB);
+		// copy every editable field
+		getPropertyCopier(model).copyEditableProperties(elem, elemFromDB);
+		elemFromDB._save();
+		AutoCompleteIndex.update(model, indexed, AutoCompleteIndex.snapshot(model, elemFromDB));
+		invalidateCaches(model);
+		return noContent(EntityTags.forEntity(crudModel, elemFromDB));
+	}
+
+	/**
+	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
+	 * right path and parameters for partially updating an entity: only the properties present in the 
+	 * {@link PatchDocument} are updated. If permissions only depend on the model class and the model is
+	 * {@link CRUDModel#bulkUpdatable} this runs a single HQL UPDATE of the patched columns, otherwise the 
+	 * entity is loaded, patched and saved.
+	 * @param model the model type
+	 * @param id the entity id to update
+	 * @param body the patch document
+	 * @param headers the request headers, for the patch document media type
+	 * @return a response with no content
+	 */
+	public <T extends Model> Response patch(Class<T> model, Object id, String body, HttpHeaders headers) {
+		CRUDModel crudModel = CRUDModel.get(model);
+		PatchDocument patch;
+		try{
+			patch = PatchDocument.parse(crudModel, headers.getMediaType(), body);
+		}catch(IllegalArgumentException x){
+			return badRequest("%s", x.getMessage());
+		}
+		if(!patch.isEmpty() && !CRUDSecure.hasInstancePermissions() && crudModel.bulkUpdatable 
+				&& !patchesIndexedProperty(crudModel, patch)
+				&& !hasRequestHeader(HttpHeaders.IF_MATCH) && !hasRequestHeader(HttpHeaders.IF_NONE_MATCH)){
+			checkPermission(model, "insert");
+			checkPermission(model, "update");
+			validatePatch(crudModel, patch);
+			if(executePatch(crudModel, id, patch) == 0)
+				checkNotFound(null, "Entity of type %s with id of %s could not be found", model.getName(), id);
+			invalidateCaches(model);
+			return noContent();
+		}
+		@SuppressWarnings("unchecked")
+		T elemFromDB = (T)crudModel.factory.findById(id);
+		checkNotFound(elemFromDB, "Entity of type %s with id of %s could not be found", model.getName(), id);
+		checkPermission(elemFromDB, "update");
+		Response preconditionFailed = evaluatePreconditions(EntityTags.forEntity(crudModel, elemFromDB));
+		if(preconditionFailed != null)
+			return preconditionFailed;
+		Object[] indexed = AutoCompleteIndex.snapshot(model, elemFromDB);
+		try{
+			for(Entry<CRUDProperty, Object> value : patch.getValues().entrySet()){
+				Field field = value.getKey().field;
+				field.setAccessible(true);
+				field.set(elemFromDB, value.getValue());
+			}
+		}catch(IllegalAccessException x){
+			throw new RuntimeException(x);
+		}
+		// like edit, the new state must be one we could insert
+		checkPermission(elemFromDB, "insert");
+		@SuppressWarnings("unchecked")
+		ClassValidator<T> validator = (ClassValidator<T>) crudModel.getValidator();
+		InvalidValue[] invalidValues = validator.getInvalidValues(elemFromDB);
+		if(invalidValues.length > 0)
+			throw new InvalidStateException(invalidValues);
+		elemFromDB._save();
+		AutoCompleteIndex.update(model, indexed, AutoCompleteIndex.snapshot(model, elemFromDB));
+		invalidateCaches(model);
+		return noContent(EntityTags.forEntity(crudModel, elemFromDB));
+	}
+
+	private static boolean patchesIndexedProperty(CRUDModel model, PatchDocument patch) {
+		for(CRUDProperty property : model.autoCompleteIndexed){
+			if(patch.getValues().containsKey(property))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Validates every value of a patch on its own, throws an InvalidStateException if any is invalid
+	 */
+	private static void validatePatch(CRUDModel model, PatchDocument patch) {
+		List<InvalidValue> invalidValues = new ArrayList<InvalidValue>();
+		for(Entry<CRUDProperty, Object> value : patch.getValues().entrySet()){
+			InvalidValue[] invalid = model.getValidator().getPotentialInvalidValues(value.getKey().name, value.getValue());
+			invalidValues.addAll(Arrays.asList(invalid));
+		}
+		if(!invalidValues.isEmpty())
+			throw new InvalidStateException(invalidValues.toArray(new InvalidValue[invalidValues.size()]));
+	}
+
+	/**
+	 * Updates the patched columns of an entity with a single HQL UPDATE, which also increments its version 
+	 * if it has one
+	 * @return the number of updated entities
+	 */
+	private static int executePatch(CRUDModel model, Object id, PatchDocument patch) {
+		StringBuilder hql = new StringBuilder("UPDATE ");
+		if(model.version != null)
+			hql.append("VERSIONED ");
+		hql.append(model.model.getSimpleName()).append(" SET ");
+		int i = 0;
+		for(Entry<CRUDProperty, Object> value : patch.getValues().entrySet()){
+			if(i > 0)
+				hql.append(", ");
+			hql.append(value.getKey().name);
+			// null parameters have no type to bind with
+			if(value.getValue() == null)
+				hql.append(" = NULL");
+			else
+				hql.append(" = :p").append(i);
+			i++;
+		}
+		hql.append(" WHERE ").append(model.factory.keyName()).append(" = :id");
+		Query query = JPA.em().createQuery(hql.toString());
+		i = 0;
+		for(Object value : patch.getValues().values()){
+			if(value != null)
+				query.setParameter("p"+i, value);
+			i++;
+		}
+		query.setParameter("id", id);
+		return query.executeUpdate();
+	}
+
+	/**
+	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
+	 * right path and parameters for adding a list of entities in a single transaction.
+	 * @param model the model type
+	 * @param elems the new entities
+	 * @return a response with the outcome of every addition
+	 */
+	public <T extends Model> Response addBatch(Class<T> model, List<T> elems, UriInfo uriInfo) {
+		boolean instancePermissions = checkBatchPermission(model, "insert");
+		UriBuilder uriBuilder = uriInfo.getBaseUriBuilder().path(getClass()).path(getClass(), "get");
+		int batchSize = BatchWriter.getBatchSize();
+		BatchWriter writer = new BatchWriter();
+		BatchResponse response = new BatchResponse();
+		for(int i=0;i<elems.size();i++){
+			T elem = elems.get(i);
+			if(instancePermissions && !hasPermission(elem, "insert"))
+				response.add(i, HttpURLConnection.HTTP_FORBIDDEN);
+			else if(checkBatchItem(model, elem, elem, response, i)){
+				writer.save(elem);
+				AutoCompleteIndex.update(model, null, AutoCompleteIndex.snapshot(model, elem));
+				BatchResponse.Result result = response.add(i, HttpURLConnection.HTTP_CREATED);
+				result.setId(elem._key());
+				if(elem._key() != null)
+					result.setLocation(uriBuilder.build(elem._key()).toString());
+			}
+			if((i + 1) % batchSize == 0)
+				writer.flush();
+		}
+		writer.flush();
+		invalidateCaches(model);
+		return ok(response);
+	}
+
+	/**
+	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
+	 * right path and parameters for editing a list of entities in a single transaction.
+	 * @param model the model type
+	 * @param items the ids of the entities to update, with their new values
+	 * @return a response with the outcome of every update
+	 */
+	public <T extends Model> Response editBatch(Class<T> model, List<? extends BatchItem> items) {
+		boolean instancePermissions = checkBatchPermission(model, "insert", "update");
+		int batchSize = BatchWriter.getBatchSize();
+		BatchWriter writer = new BatchWriter();
+		BatchResponse response = new BatchResponse();
+		for(int start=0;start<items.size();start+=batchSize){
+			List<? extends BatchItem> chunk = items.subList(start, Math.min(start + batchSize, items.size()));
+			List<Object> ids = new ArrayList<Object>(chunk.size());
+			for(BatchItem item : chunk)
+				ids.add(parseBatchId(model, item.id));
+			Map<Object, T> elemsFromDB = findByIds(model, ids);
+			for(int j=0;j<chunk.size();j++){
+				int i = start + j;
+				Object id = ids.get(j);
+				Object value = chunk.get(j).value;
+				if(id == null || !model.isInstance(value)){
+					InvalidResponse invalid = new InvalidResponse();
+					invalid.addGlobalError(id == null ? "Invalid id" : "Missing entity");
+					response.add(i, HttpURLConnection.HTTP_BAD_REQUEST).setInvalid(invalid);
+					continue;
+				}
+				T elem = model.cast(value);
+				T elemFromDB = elemsFromDB.get(id);
+				if(elemFromDB == null){
+					response.add(i, HttpURLConnection.HTTP_NOT_FOUND).setId(id);
+					continue;
+				}
+				if(instancePermissions && (!hasPermission(elem, "insert") || !hasPermission(elemFromDB, "update"))){
+					response.add(i, HttpURLConnection.HTTP_FORBIDDEN).setId(id);
+					continue;
+				}
+				Object[] indexed = AutoCompleteIndex.snapshot(model, elemFromDB);
+				getPropertyCopier(model).copyEditableProperties(elem, elemFromDB);
+				if(!checkBatchItem(model, elem, elemFromDB, response, i)){
+					writer.discard(elemFromDB);
+					continue;
+				}
+				writer.save(elemFromDB);
+				AutoCompleteIndex.update(model, indexed, AutoCompleteIndex.snapshot(model, elemFromDB));
+				response.add(i, HttpURLConnection.HTTP_NO_CONTENT).setId(id);
+			}
+			writer.flush();
+		}
+		invalidateCaches(model);
+		return ok(response);
+	}
+
+	/**
+	 * Override this method to implement your own endpoint, otherwise it will be magically bound to the
+	 * right path and parameters for deleting a list of entities in a single transaction.
+	 * @param model the model type
+	 * @param ids the ids of the entities to delete
+	 * @return a response with the outcome of every deletion
+	 */
+	public <T extends Model> Response deleteBatch(Class<T> model, List<String> ids) {
+		boolean instancePermissions = checkBatchPermission(model, "delete");
+		int batchSize = BatchWriter.getBatchSize();
+		BatchWriter writer = new BatchWriter();
+		BatchResponse response = new BatchResponse();
+		for(int start=0;start<ids.size();start+=batchSize){
+			List<String> chunk = ids.subList(start, Math.min(start + batchSize, ids.size()));
+			List<Object> keys = new ArrayList<Object>(chunk.size());
+			for(String id : chunk)
+				keys.add(parseBatchId(model, id));
+			Map<Object, T> entities = findByIds(model, keys);
+			for(int j=0;j<chunk.size();j++){
+				int i = start + j;
+				Object id = keys.get(j);
+				if(id == null){
+					InvalidResponse invalid = new InvalidResponse();
+					invalid.addGlobalError("Invalid id");
+					response.add(i, HttpURLConnection.HTTP_BAD_REQUEST).setInvalid(invalid);
+					continue;
 				}
-				// if that field is not editable, let us barf
-				if(crud == null || !crud.editable())
-					checkEmpty(newValue);
+				T entity = entities.get(id);
+				if(entity == null)
+					response.add(i, HttpURLConnection.HTTP_NOT_FOUND).setId(id);
+				else if(instancePermissions && !hasPermission(entity, "delete"))
+					response.add(i, HttpURLConnection.HTTP_FORBIDDEN).setId(id);
 				else{
-					// we can set it
-					try{
-						PropertyUtils.setSimpleProperty(elemFromDB, property.name, newValue);
-					} catch (Exception e) {
-						throw toThrowable(internalError(e, "Failed to set property %s", property.name));
-					}
+					Object[] indexed = AutoCompleteIndex.snapshot(model, entity);
+					writer.delete(entity);
+					AutoCompleteIndex.update(model, indexed, null);
+					response.add(i, HttpURLConnection.HTTP_NO_CONTENT).setId(id);
 				}
 			}
-		});
-		elemFromDB._save();
-		return noContent();
+			writer.flush();
+		}
+		invalidateCaches(model);
+		return ok(response);
+	}
+
+	/**
+	 * Checks the given permissions on the model class once for a whole batch, unless permissions depend on 
+	 * the entity instance (see {@link CRUDSecure#hasInstancePermissions()}).
+	 * @return true if permissions have to be checked for every entity instead
+	 */
+	protected <T extends Model> boolean checkBatchPermission(Class<T> model, String... permissions) {
+		if(CRUDSecure.hasInstancePermissions())
+			return true;
+		for(String permission : permissions)
+			checkPermission(model, permission);
+		return false;
+	}
+
+	/**
+	 * Checks that a batch item has no value for non-editable properties, and that the resulting entity is valid. 
+	 * If not, adds a BAD_REQUEST result for it.
+	 * @param model the model type
+	 * @param elem the entity as sent by the client
+	 * @param entity the entity that would be saved
+	 * @param response the batch response
+	 * @param index the position of the item in the batch
+	 * @return true if the item can be saved
+	 */
+	protected <T extends Model> boolean checkBatchItem(Class<T> model, T elem, T entity, BatchResponse response, int index) {
+		InvalidResponse invalid = null;
+		String property = getPropertyCopier(model).findNonEmptyReadOnlyProperty(elem);
+		if(property != null){
+			invalid = new InvalidResponse();
+			invalid.addError(property, "not editable");
+		}else{
+			@SuppressWarnings("unchecked")
+			ClassValidator<T> validator = (ClassValidator<T>) CRUDModel.get(model).getValidator();
+			InvalidValue[] invalidValues = validator.getInvalidValues(entity);
+			if(invalidValues.length > 0){
+				invalid = new InvalidResponse();
+				for(InvalidValue invalidValue : invalidValues)
+					invalid.addError(invalidValue.getPropertyName(), invalidValue.getMessage());
+			}
+		}
+		if(invalid == null)
+			return true;
+		BatchResponse.Result result = response.add(index, HttpURLConnection.HTTP_BAD_REQUEST);
+		result.setId(entity._key());
+		result.setInvalid(invalid);
+		return false;
+	}
+
+	/**
+	 * Converts an id sent by the client to the model's key type
+	 * @return the id, or null if it is not valid
+	 */
+	protected <T extends Model> Object parseBatchId(Class<T> model, String id) {
+		if(id == null)
+			return null;
+		try{
+			return TypeConverter.parse(CRUDModel.get(model).factory.keyType(), id);
+		}catch(IllegalArgumentException x){
+			return null;
+		}
+	}
+
+	/**
+	 * Loads every entity with the given ids in a single query
+	 * @param model the model type
+	 * @param ids the ids to load, which may contain nulls
+	 * @return the entities found, by id
+	 */
+	protected <T extends Model> Map<Object, T> findByIds(Class<T> model, Collection<Object> ids) {
+		Map<Object, T> ret = new HashMap<Object, T>();
+		Set<Object> keys = new HashSet<Object>(ids);
+		keys.remove(null);
+		if(keys.isEmpty())
+			return ret;
+		Query query = JPA.em().createQuery("FROM "+model.getSimpleName()
+				+" WHERE "+CRUDModel.get(model).factory.keyName()+" IN (:ids)");
+		query.setParameter("ids", keys);
+		for(Object entity : query.getResultList()){
+			T elem = model.cast(entity);
+			ret.put(elem._key(), elem);
+		}
+		return ret;
+	}
+
+	/**
+	 * Throws BAD_REQUEST if any of the non-editable properties of the given entity has a value
+	 * @param model the model type
+	 * @param elem the entity to check
+	 */
+	protected <T extends Model> void checkReadOnlyPropertiesEmpty(Class<T> model, T elem) {
+		String property = getPropertyCopier(model).findNonEmptyReadOnlyProperty(elem);
+		if(property != null){
+			Logger.debug("Non-editable property %s has a value", property);
+			throw new WebApplicationException(HttpURLConnection.HTTP_BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Gets the property copier for the given model. {@link CRUDEnhancer} overrides this with one that uses
+	 * direct field access when it can, otherwise we use reflection.
+	 * @param model the model type
+	 * @return the property copier
+	 */
+	protected <T extends Model> PropertyCopier getPropertyCopier(Class<T> model) {
+		return CRUDModel.get(model).copier;
 	}
 
 	/**
@@ -458,7 +1010,14 @@ public abstract class RESTResource {
 	 */
 	public <T extends Model> Response descriptor(Class<T> model) {
 		checkPermission(model, "select");
-		return Response.ok(new Descriptor<T>(model)).build();
+		Request request = ResteasyProviderFactory.getContextData(Request.class);
+		if(request == null)
+			return Response.ok(new Descriptor<T>(model)).build();
+		Variant variant = request.selectVariant(Descriptor.VARIANTS);
+		if(variant == null)
+			return Response.notAcceptable(Descriptor.VARIANTS).build();
+		return Descriptor.getRepresentation(model, variant.getMediaType())
+			.respond(request).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
 	}
 
 	/**
@@ -471,6 +1030,39 @@ public abstract class RESTResource {
 	@XmlAccessorType(XmlAccessType.NONE)
 	public static class Descriptor<T extends Model> {
 
+		/**
+		 * The media types we can marshal descriptors to
+		 */
+		public static final List<Variant> VARIANTS = Variant.mediaTypes(
+				MediaType.APPLICATION_XML_TYPE,
+				MediaType.APPLICATION_JSON_TYPE).build();
+
+		private static final Map<String, Representation> representations = new ConcurrentHashMap<String, Representation>();
+
+		/**
+		 * Gets the marshalled descriptor for the given model and media type. Descriptors only change when
+		 * classes are reloaded so these are cached until {@link #clearCache()} is called.
+		 * @param model the model type
+		 * @param mediaType one of the media types from {@link #VARIANTS}
+		 * @return the marshalled descriptor
+		 */
+		public static <T extends Model> Representation getRepresentation(Class<T> model, MediaType mediaType) {
+			String key = model.getName() + " " + mediaType;
+			Representation ret = representations.get(key);
+			if(ret == null){
+				ret = Representation.marshal(new Descriptor<T>(model), new Annotation[0], mediaType);
+				representations.put(key, ret);
+			}
+			return ret;
+		}
+
+		/**
+		 * Forgets every cached descriptor, called when the application is reloaded
+		 */
+		public static void clearCache() {
+			representations.clear();
+		}
+
 		@XmlElement
 		public List<Column> columns = new ArrayList<Column>();
 
@@ -478,12 +1070,11 @@ public abstract class RESTResource {
 		public Descriptor(){}
 		
 		public Descriptor(Class<T> model) {
-			walkProperties(model, new PropertyWalker(){
-				@Override
-				public void walk(Property property, Field field, CRUDField crud) {
-					addColumn(property, field, crud);
-				}
-			});
+			for(CRUDProperty property : CRUDModel.get(model).properties){
+				// FIXME: only make it a column if it has a representation in JAXB, and allow @CRUD-less fields
+				if(property.crud != null)
+					columns.add(new Column(property));
+			}
 			CRUDOrder crudOrder = model.getAnnotation(CRUDOrder.class);
 			if(crudOrder != null){
 				List<Column> sortedColumns = new ArrayList<Column>();
@@ -507,13 +1098,6 @@ public abstract class RESTResource {
 			return -1;
 		}
 
-		private void addColumn(Property p, Field field, CRUDField crud) {
-			// FIXME: only make it a column if it has a representation in JAXB, and allow @CRUD-less fields
-			if(crud == null)
-				return;
-			columns.add(new Column(p, field, crud));
-		}
-		
 	}
 
 	/**
@@ -532,6 +1116,8 @@ public abstract class RESTResource {
 		@XmlElement
 		public boolean sortable;
 		@XmlElement
+		public boolean filterable;
+		@XmlElement
 		public boolean autocomplete;
 		@XmlElement
 		public String type;
@@ -542,18 +1128,28 @@ public abstract class RESTResource {
 		public Column(){}
 		
 		public Column(Property p, Field field, CRUDField crud) {
-			this.field = name = p.name;
+			this(p.name, field, crud, Type.forClass(field.getType()));
+		}
+
+		public Column(CRUDProperty property) {
+			this(property.name, property.field, property.crud, property.fieldType);
+		}
+
+		private Column(String propertyName, Field field, CRUDField crud, Type fieldType) {
+			this.field = name = propertyName;
 			editable = false;
 			autocomplete = false;
 			sortable = false;
-			Class<?> fieldType = field.getType();
-			setType(fieldType);
+			if(fieldType == null)
+				throw new RuntimeException("Unknown field type: "+field.getType().getName());
+			type = fieldType.name();
 			if(crud != null){
 				if(crud.name().length() > 0)
 					name = crud.name();
 				editable = crud.editable();
 				autocomplete = crud.autoComplete();
 				sortable = crud.sortable();
+				filterable = crud.filterable();
 				Type crudType = crud.type();
 				if(crudType != Type.DEFAULT)
 					type = crudType.name();
@@ -566,34 +1162,6 @@ public abstract class RESTResource {
 					|| field.isAnnotationPresent(NotNull.class))
 				validators.add("notempty");
 		}
-
-		private void setType(Class<?> fieldType) {
-			if(fieldType == String.class){
-				type = Type.STRING.name();
-			}else if(fieldType == Integer.class
-					|| fieldType == Integer.TYPE
-					|| fieldType == Long.class
-					|| fieldType == Long.TYPE
-					|| fieldType == Short.class
-					|| fieldType == Short.TYPE
-					|| fieldType == BigInteger.class){
-				type = Type.INTEGER.name();
-			}else if(fieldType == Float.class
-					|| fieldType == Float.TYPE
-					|| fieldType == Double.class
-					|| fieldType == Double.TYPE
-					|| fieldType == BigDecimal.class){
-				type = Type.DECIMAL.name();
-			}else if(fieldType == Date.class
-					|| fieldType == Calendar.class
-					|| fieldType == java.sql.Date.class
-					|| fieldType == java.sql.Timestamp.class){
-				type = Type.DATE.name();
-			}else if(fieldType == Boolean.class){
-				type = Type.BOOLEAN.name();
-			}else
-				throw new RuntimeException("Unknown field type: "+fieldType.getName());
-		}
 	}
 	
 	/**
@@ -607,51 +1175,48 @@ public abstract class RESTResource {
 	 * Walks every property with CRUDFIeld
 	 */
 	protected static <T extends Model> void walkProperties(Class<T> model, PropertyWalker walker){
-		// FIXME: make this faster (10x slower than doing it manually for some reason)
-		Factory factory = Manager.factoryFor(model);
-		for(Property prop : factory.listProperties()){
-			Field field = prop.field;
-			CRUDField crud = field.getAnnotation(CRUDField.class);
-			walker.walk(prop, field, crud);
+		for(CRUDProperty property : CRUDModel.get(model).properties){
+			walker.walk(property.property, property.field, property.crud);
 		}
 	}
 
 	/**
-	 * Gets the list of sortable columns for the given model
+	 * Gets the set of sortable columns for the given model. The returned set is shared and cannot be modified.
 	 */
 	protected <T extends Model> Set<String> getSortableColumns(Class<T> model) {
-		final Set<String> ret = new HashSet<String>();
-		walkProperties(model, new PropertyWalker(){
-			@Override
-			public void walk(Property property, Field field, CRUDField crud) {
-				if(crud != null && crud.sortable())
-					ret.add(property.name);
-			}
-		});
-		return ret;
+		return CRUDModel.get(model).sortable;
 	}
 	
 	/**
-	 * Gets the list of searchable columns for the given model
+	 * Gets the set of searchable columns for the given model. The returned set is shared and cannot be modified.
 	 */
 	protected <T extends Model> Set<String> getSearchableColumns(Class<T> model) {
-		final Set<String> ret = new HashSet<String>();
-		walkProperties(model, new PropertyWalker(){
-			@Override
-			public void walk(Property property, Field field, CRUDField crud) {
-				if(crud != null && crud.searchable())
-					ret.add(property.name);
-			}
-		});
-		return ret;
+		return CRUDModel.get(model).searchable;
 	}
 
 	/**
 	 * Makes a paged query for the given entity
 	 */
 	protected <T extends Model> PagedQuery<T> findPaged(Class<T> model) {
-		PagedQuery<T> query = new PagedQuery<T>("FROM "+model.getSimpleName());
-		query.searchFields(getSearchableColumns(model));
+		FetchPlan fetchPlan = getFetchPlan(model);
+		PagedQuery<T> query;
+		if(fetchPlan != null){
+			query = new PagedQuery<T>("FROM "+model.getSimpleName()+" "+FetchPlan.ALIAS);
+			query.fetchPlan = fetchPlan;
+		}else
+			query = new PagedQuery<T>("FROM "+model.getSimpleName());
+		if(getCachePolicy() != CachePolicy.NONE){
+			query.cacheable = true;
+			query.cacheRegion = getCacheRegion(model);
+		}
+		CRUDModel crudModel = CRUDModel.get(model);
+		for(String field : getSearchableColumns(model)){
+			CRUDProperty property = crudModel.getProperty(field);
+			if(property != null && property.crud != null)
+				query.searchField(field, property.crud.search(), property.crud.searchPredicate());
+			else
+				query.searchField(field, SearchMode.CONTAINS, null);
+		}
 		return query;
 	}
 
@@ -688,22 +1253,274 @@ public abstract class RESTResource {
 			Object oob, UriInfo uriInfo, String... permissions) {
 		results.start = (long)q.start;
 		results.limit = (long)q.length;
-		if (isSortValid(q.sort, validColumns))
-			results.order = q.sort;
+		// subclasses can still restrict sorting further
+		Sort sort = isSortValid(q.sort, validColumns) ? Sort.parse(q.sort) : null;
+		if (sort != null)
+			results.sort = sort;
 		if(!StringUtils.isEmpty(q.search))
 			results.search = q.search;
-		DataTable<T> dataTable = makeDataTable(q.echo,
-				results.getCount(), results.getResultList(), klass, oob,
+		applyFilters(klass, results, q.filter);
+		Keyset keyset = null;
+		if(q.after != null){
+			keyset = makeKeyset(klass, sort);
+			try{
+				keyset.apply(results, q.after);
+			}catch(IllegalArgumentException x){
+				throw toThrowable(badRequest("%s", x.getMessage()));
+			}
+		}
+		if(!StringUtils.isEmpty(q.fields))
+			results.projection = makeProjection(klass, results, q.fields, keyset);
+		String cacheKey = null;
+		long generation = 0;
+		MediaType mediaType = null;
+		if(oob == null && !q.stream && getCachePolicy() == CachePolicy.RESPONSE && !CRUDSecure.hasInstancePermissions()){
+			CRUD crud = getCRUD();
+			mediaType = selectMediaType(crud != null && crud.cbor() ? CBOR_VARIANTS : Descriptor.VARIANTS);
+			// the echo value cannot be spliced into binary pages
+			if(mediaType != null && mediaType.isCompatible(CBORWriter.APPLICATION_CBOR_TYPE))
+				mediaType = null;
+			if(mediaType != null){
+				// only now that the query is complete can the key tell apart the queries of different endpoints
+				cacheKey = getResponseCacheKey(q, results, klass, mediaType, uriInfo, permissions);
+				Response cached = ResponseCache.get(klass, cacheKey, q.echo);
+				if(cached != null)
+					return cached;
+				generation = ResponseCache.getGeneration(klass);
+			}
+		}
+		long start = System.nanoTime();
+		List<T> rows = q.stream ? results.getStreamedResultList(StreamedList.getBatchSize()) : results.getResultList();
+		Metrics.time("list", klass, CRUDMetrics.QUERY, start);
+		if(!q.stream)
+			Metrics.get().count("list", klass, CRUDMetrics.ROWS, rows.size());
+		long count;
+		SizeType sizeType;
+		if(DataTableQuery.COUNT_NONE.equalsIgnoreCase(q.count)){
+			count = 0;
+			sizeType = SizeType.OMITTED;
+		}else if(DataTableQuery.COUNT_ESTIMATE.equalsIgnoreCase(q.count)){
+			Long cachedCount = CountCache.get(klass, results.getCountKey());
+			if(cachedCount != null)
+				count = cachedCount;
+			else{
+				// we know there are at least as many as we have seen
+				count = (results.start != null ? results.start : 0) + (q.stream ? 0 : rows.size());
+			}
+			sizeType = SizeType.ESTIMATED;
+		}else{
+			start = System.nanoTime();
+			count = getCount(klass, results);
+			Metrics.time("list", klass, CRUDMetrics.COUNT, start);
+			sizeType = SizeType.EXACT;
+		}
+		// cached pages get the echo value of each request spliced in
+		String echo = cacheKey != null && q.echo != null ? ResponseCache.ECHO_PLACEHOLDER : q.echo;
+		DataTable<T> dataTable = makeDataTable(echo,
+				count, rows, klass, oob,
 				uriInfo);
+		dataTable.setSizeType(sizeType);
+		if(keyset != null && !q.stream && !rows.isEmpty() && rows.size() == q.length)
+			dataTable.setNext(keyset.makeCursor((Model) rows.get(rows.size() - 1)));
 		// add any permission we have
 		for (String permission : permissions) {
 			if (hasPermission(dataTable.facadeFor(), permission))
 				dataTable.addPermission(permission);
 		}
-		Logger.info("Returning 200 with entity: %s", dataTable);
+		if(Logger.isDebugEnabled())
+			Logger.debug("Returning 200 with %s of %s %s", q.stream ? "a stream" : rows.size(), count, klass.getSimpleName());
+		if(cacheKey != null)
+			return ResponseCache.put(klass, generation, cacheKey, dataTable, q.echo, mediaType, isStreamingJSON());
 		return Response.ok(dataTable).build();
 	}
 
+	/**
+	 * Selects the media type of the response among the given variants, according to the current request
+	 * @param variants the media types we can respond with
+	 * @return the selected media type, or null if there is no current request or no variant is acceptable
+	 */
+	protected MediaType selectMediaType(List<Variant> variants) {
+		Request request = ResteasyProviderFactory.getContextData(Request.class);
+		if(request == null)
+			return null;
+		Variant variant = request.selectVariant(variants);
+		return variant != null ? variant.getMediaType() : null;
+	}
+
+	/**
+	 * Makes the {@link ResponseCache} key for a list page. This has to include everything the page depends on, 
+	 * which includes the class permissions of the caller, since they decide which links and permissions the 
+	 * page lists, and the query with its parameters, since several endpoints can list the same model with
+	 * different queries.
+	 */
+	protected <T> String getResponseCacheKey(DataTableQuery q, PagedQuery<T> results, Class<T> klass, 
+			MediaType mediaType, UriInfo uriInfo, String... permissions) {
+		StringBuilder key = new StringBuilder(klass.getName());
+		key.append(' ').append(mediaType);
+		key.append(' ').append(uriInfo.getBaseUri());
+		key.append(' ');
+		for(String permission : CRUD_PERMISSIONS)
+			key.append(hasPermission(klass, permission) ? '1' : '0');
+		for(String permission : permissions)
+			key.append(' ').append(permission).append('=').append(hasPermission(klass, permission) ? '1' : '0');
+		key.append(' ').append(q.getCacheKey());
+		key.append(' ').append(results.getCacheKey());
+		return key.toString();
+	}
+
+	/**
+	 * Counts the results of the given query, using the {@link CountCache} if it is enabled
+	 * @param klass the entity type
+	 * @param results the query to count
+	 * @return the count
+	 */
+	protected <T> long getCount(Class<T> klass, PagedQuery<T> results) {
+		if(!CountCache.isEnabled())
+			return results.getCount();
+		String key = results.getCountKey();
+		Long count = CountCache.get(klass, key);
+		if(count == null){
+			count = results.getCount();
+			CountCache.put(klass, key, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Forgets anything we cached about the given model, called after it is written to
+	 * @param model the model type
+	 */
+	protected <T extends Model> void invalidateCaches(final Class<T> model) {
+		CountCache.invalidate(model);
+		ResponseCache.invalidate(model);
+		// pages and counts loaded before we commit would still see the old rows
+		TransactionHooks.afterCommit(new Runnable(){
+			@Override
+			public void run() {
+				CountCache.invalidate(model);
+				ResponseCache.invalidate(model);
+			}
+		});
+		if(getCachePolicy() != CachePolicy.NONE){
+			final SessionFactory sessionFactory = ((Session) JPA.em().getDelegate()).getSessionFactory();
+			final String region = getCacheRegion(model);
+			// evicting before the commit would let other transactions cache what we are replacing
+			TransactionHooks.afterCommit(new Runnable(){
+				@Override
+				public void run() {
+					sessionFactory.getCache().evictQueryRegion(region);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the CRUD annotation of this resource
+	 * @return the annotation, or null if this resource has none
+	 */
+	protected CRUD getCRUD() {
+		return getClass().getAnnotation(CRUD.class);
+	}
+
+	/**
+	 * Gets the cache policy of this resource, from its CRUD annotation
+	 */
+	protected CachePolicy getCachePolicy() {
+		CRUD crud = getCRUD();
+		return crud != null ? crud.cache() : CachePolicy.NONE;
+	}
+
+	/**
+	 * Checks if this resource writes its JSON with the streaming writer, as per its {@link StreamingJSON} annotation
+	 */
+	protected boolean isStreamingJSON() {
+		return getClass().isAnnotationPresent(StreamingJSON.class);
+	}
+
+	/**
+	 * Gets the fetch plan of this resource, from its CRUD annotation
+	 * @param model the model type
+	 * @return the fetch plan, or null if this resource fetches no association
+	 */
+	protected <T extends Model> FetchPlan getFetchPlan(Class<T> model) {
+		CRUD crud = getCRUD();
+		if(crud == null)
+			return null;
+		return FetchPlan.get(CRUDModel.get(model), crud.fetch());
+	}
+
+	/**
+	 * Gets the query cache region of this resource, from its CRUD annotation, or named after the model class.
+	 * This must not be the entity region, which has the model class name.
+	 * @param model the model type
+	 */
+	protected <T> String getCacheRegion(Class<T> model) {
+		CRUD crud = getCRUD();
+		if(crud != null && crud.cacheRegion().length() > 0)
+			return crud.cacheRegion();
+		return model.getName() + ".queries";
+	}
+
+	/**
+	 * Makes a keyset for paging over the given entity type
+	 * @param klass the entity type, which must be a Model
+	 * @param sort the valid sort order, or null
+	 * @return the keyset
+	 */
+	protected <T> Keyset makeKeyset(Class<T> klass, Sort sort) {
+		if(!Model.class.isAssignableFrom(klass))
+			throw toThrowable(badRequest("Keyset paging is not supported for %s", klass.getName()));
+		try{
+			return new Keyset(CRUDModel.get(klass.asSubclass(Model.class)), sort);
+		}catch(IllegalArgumentException x){
+			throw toThrowable(badRequest("%s", x.getMessage()));
+		}
+	}
+
+	/**
+	 * Adds the given filters to a paged query
+	 * @param klass the entity type, which must be a Model if there are filters
+	 * @param query the paged query
+	 * @param filters the filters as specified in {@link DataTableQuery#filter}, or null
+	 */
+	protected <T> void applyFilters(Class<T> klass, PagedQuery<T> query, List<String> filters) {
+		if(filters == null || filters.isEmpty())
+			return;
+		if(!Model.class.isAssignableFrom(klass))
+			throw toThrowable(badRequest("Filters are not supported for %s", klass.getName()));
+		CRUDModel model = CRUDModel.get(klass.asSubclass(Model.class));
+		try{
+			for(String filter : filters){
+				if(!StringUtils.isEmpty(filter))
+					query.filter(Filter.parse(model, filter));
+			}
+		}catch(IllegalArgumentException x){
+			throw toThrowable(badRequest("%s", x.getMessage()));
+		}
+	}
+
+	/**
+	 * Makes the projection for a sparse fieldset of a list, which also selects the keyset columns, if any,
+	 * so that we can make the next cursor
+	 * @param klass the entity type, which must be a Model
+	 * @param query the paged query, which must select whole entities
+	 * @param fields the requested fields
+	 * @param keyset the keyset, or null
+	 * @return the projection, or null if no field was requested
+	 */
+	protected <T> Projection makeProjection(Class<T> klass, PagedQuery<T> query, String fields, Keyset keyset) {
+		if(!Model.class.isAssignableFrom(klass) || !query.isProjectable())
+			throw toThrowable(badRequest("Sparse fieldsets are not supported for %s", klass.getName()));
+		try{
+			Projection projection = Projection.parse(CRUDModel.get(klass.asSubclass(Model.class)), fields);
+			if(projection != null && keyset != null)
+				projection = projection.with(keyset.getColumns());
+			return projection;
+		}catch(IllegalArgumentException x){
+			throw toThrowable(badRequest("%s", x.getMessage()));
+		}
+	}
+
 	/**
 	 * Override this to make your own DataTable with the appropriate {@link @XmlSeeAlso} annotation.
 	 * If you do not, one will be provided for you with only T as JAXB context.
@@ -713,39 +1530,21 @@ public abstract class RESTResource {
 	}
 
 	/**
-	 * Checks if the given sort query is valid according to the valid columns
+	 * Checks if the given sort query is valid according to the valid columns, see {@link Sort}
 	 * @param sort the query
 	 * @param validColumns the valid columns
 	 */
 	protected boolean isSortValid(String sort, Set<String> validColumns) {
-		if (sort == null)
-			return false;
-		final StringTokenizer tokenizer = new StringTokenizer(sort, ",");
-		// we need at least one
-		if (!tokenizer.hasMoreTokens())
-			return false;
-		while (tokenizer.hasMoreTokens()) {
-			final String fragment = tokenizer.nextToken().trim();
-			String field;
-			if (fragment.toLowerCase().endsWith(" desc"))
-				field = fragment.substring(0, fragment.length() - 5).trim();
-			else if (fragment.toLowerCase().endsWith(" asc"))
-				field = fragment.substring(0, fragment.length() - 4).trim();
-			else
-				field = fragment;
-			// can be an int or an allowed name
-			if (!field.matches("\\d+") && !validColumns.contains(field))
-				return false;
-		}
-		return true;
+		return Sort.parse(sort, validColumns) != null;
 	}
 
 	/**
 	 * Logs an entity query
 	 */
 	protected void logQuery(DataTableQuery q) {
-		Logger.info("GET start: %s, length: %s, echo: %s, sort: %s, search: %s",
-				q.start, q.length, q.echo, q.sort, q.search);
+		if(Logger.isDebugEnabled())
+			Logger.debug("GET start: %s, length: %s, echo: %s, sort: %s, search: %s, filter: %s",
+					q.start, q.length, q.echo, q.sort, q.search, q.filter);
 	}
 
 }
@@ -0,0 +1,112 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import play.libs.Codec;
+
+/**
+ * An entity already marshalled for a given media type, along with a strong ETag computed from its bytes.
+ * These are immutable and can be cached and served to any number of requests.
+ */
+public class Representation {
+
+	/**
+	 * The media type of this representation
+	 */
+	public final MediaType mediaType;
+	/**
+	 * The marshalled entity
+	 */
+	public final byte[] bytes;
+	/**
+	 * A strong entity tag for these bytes
+	 */
+	public final EntityTag etag;
+
+	public Representation(MediaType mediaType, byte[] bytes) {
+		this.mediaType = mediaType;
+		this.bytes = bytes;
+		this.etag = new EntityTag(hash(bytes));
+	}
+
+	/**
+	 * Marshals the given entity with the JAX-RS providers of the current request
+	 * @param entity the entity to marshal
+	 * @param annotations the annotations to pass to the MessageBodyWriter
+	 * @param mediaType the media type to marshal to
+	 * @return the marshalled representation
+	 */
+	public static Representation marshal(Object entity, Annotation[] annotations, MediaType mediaType) {
+		Providers providers = ResteasyProviderFactory.getContextData(Providers.class);
+		if(providers == null)
+			providers = ResteasyProviderFactory.getInstance();
+		@SuppressWarnings("unchecked")
+		Class<Object> type = (Class<Object>) entity.getClass();
+		MessageBodyWriter<Object> writer = providers.getMessageBodyWriter(type, type, annotations, mediaType);
+		if(writer == null)
+			throw new RuntimeException("No MessageBodyWriter for "+type.getName()+" and media type "+mediaType);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writer.writeTo(entity, type, type, annotations, mediaType, new MultivaluedMapImpl<String, Object>(), out);
+		} catch (IOException e) {
+			// we are writing to memory
+			throw new RuntimeException(e);
+		}
+		return new Representation(mediaType, out.toByteArray());
+	}
+
+	/**
+	 * Makes a response for this representation, which is NOT_MODIFIED if the request preconditions match 
+	 * our ETag, or OK with our bytes otherwise.
+	 * @param request the current request
+	 * @return a response builder
+	 */
+	public ResponseBuilder respond(Request request) {
+		ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if(notModified != null)
+			return notModified.tag(etag);
+		return Response.ok(bytes, mediaType).tag(etag);
+	}
+
+	private static String hash(byte[] bytes) {
+		try {
+			MessageDigest md5 = MessageDigest.getInstance("MD5");
+			return Codec.byteToHexString(md5.digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
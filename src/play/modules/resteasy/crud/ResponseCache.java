@@ -0,0 +1,298 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.annotation.Annotation;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.links.AddLinks;
+
+import play.Play;
+
+/**
+ * In-memory cache of marshalled list pages, for resources with {@link CachePolicy#RESPONSE}. Pages are marshalled
+ * with a placeholder in place of the echo value, which is spliced back in for every request. The cache holds 
+ * at most <code>resteasy.crud.responseCache.maxBytes</code> bytes of pages (10MB by default) and drops the least 
+ * recently used pages first. Every page of a model is dropped when that model is written to through a CRUD 
+ * resource.
+ */
+public class ResponseCache {
+
+	/**
+	 * The value we marshal in place of the echo value. It only has characters that need no escaping in XML or JSON,
+	 * and is always a JSON String.
+	 */
+	public static final String ECHO_PLACEHOLDER = "crud-echo-" + Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+
+	private static final Annotation[] LINKS;
+	private static final Annotation[] STREAMING_LINKS;
+	static{
+		try {
+			LINKS = ResponseCache.class.getDeclaredMethod("links").getAnnotations();
+			STREAMING_LINKS = ResponseCache.class.getDeclaredMethod("streamingLinks").getAnnotations();
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// only there for their annotations
+	@AddLinks
+	private static void links(){}
+	@AddLinks
+	@StreamingJSON
+	private static void streamingLinks(){}
+
+	private static final Map<String, Entry> pages = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private static final Map<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+	private static long bytes;
+	private static volatile long maxBytes = -1;
+
+	private static class Entry {
+		final String model;
+		final long generation;
+		final MediaType mediaType;
+		final byte[] prefix;
+		// null if the page has no echo value
+		final byte[] suffix;
+		final long size;
+
+		Entry(String model, long generation, MediaType mediaType, byte[] prefix, byte[] suffix, String key) {
+			this.model = model;
+			this.generation = generation;
+			this.mediaType = mediaType;
+			this.prefix = prefix;
+			this.suffix = suffix;
+			this.size = prefix.length + (suffix != null ? suffix.length : 0) + key.length() * 2;
+		}
+	}
+
+	/**
+	 * Gets the current generation of a model, which changes when it is written to. Take it before running the
+	 * queries for a page, and pass it to {@link #put(Class, long, String, DataTable, String, MediaType, boolean)}.
+	 * @param model the model type
+	 * @return the generation
+	 */
+	public static long getGeneration(Class<?> model) {
+		return getCounter(model.getName()).get();
+	}
+
+	/**
+	 * Gets a cached page
+	 * @param model the model type
+	 * @param key the page key, which must identify the query, media type, caller permissions and base URI
+	 * @param echo the echo value of this request
+	 * @return the response, or null if the page is not cached
+	 */
+	public static Response get(Class<?> model, String key, String echo) {
+		Entry entry;
+		synchronized(pages){
+			entry = pages.get(key);
+		}
+		if(entry == null || entry.generation != getGeneration(model))
+			return null;
+		return respond(entry, echo);
+	}
+
+	/**
+	 * Marshals a page, caches it if its model has not been written to since the given generation, and returns it
+	 * @param model the model type
+	 * @param generation the model generation, taken before the page was loaded
+	 * @param key the page key
+	 * @param dataTable the page, with {@link #ECHO_PLACEHOLDER} as echo value if the request has one
+	 * @param echo the echo value of this request
+	 * @param mediaType the media type to marshal to
+	 * @return the response
+	 */
+	public static Response put(Class<?> model, long generation, String key, DataTable<?> dataTable, String echo, MediaType mediaType) {
+		return put(model, generation, key, dataTable, echo, mediaType, false);
+	}
+
+	/**
+	 * Marshals a page, caches it if its model has not been written to since the given generation, and returns it
+	 * @param model the model type
+	 * @param generation the model generation, taken before the page was loaded
+	 * @param key the page key
+	 * @param dataTable the page, with {@link #ECHO_PLACEHOLDER} as echo value if the request has one
+	 * @param echo the echo value of this request
+	 * @param mediaType the media type to marshal to
+	 * @param streamingJSON true to marshal JSON as if the resource method had {@link StreamingJSON}
+	 * @return the response
+	 */
+	public static Response put(Class<?> model, long generation, String key, DataTable<?> dataTable, String echo, MediaType mediaType, 
+			boolean streamingJSON) {
+		long start = System.nanoTime();
+		byte[] bytes = Representation.marshal(dataTable, streamingJSON ? STREAMING_LINKS : LINKS, mediaType).bytes;
+		Metrics.time("list", model, CRUDMetrics.MARSHAL, start);
+		byte[] prefix = bytes;
+		byte[] suffix = null;
+		if(echo != null){
+			byte[] placeholder = toBytes(isJSON(mediaType) ? '"' + ECHO_PLACEHOLDER + '"' : ECHO_PLACEHOLDER, mediaType);
+			int index = indexOf(bytes, placeholder);
+			if(index == -1)
+				throw new RuntimeException("Echo placeholder not found in marshalled page");
+			prefix = new byte[index];
+			System.arraycopy(bytes, 0, prefix, 0, index);
+			int suffixStart = index + placeholder.length;
+			suffix = new byte[bytes.length - suffixStart];
+			System.arraycopy(bytes, suffixStart, suffix, 0, suffix.length);
+		}
+		Entry entry = new Entry(model.getName(), generation, mediaType, prefix, suffix, key);
+		long maxBytes = getMaxBytes();
+		if(entry.size <= maxBytes && generation == getGeneration(model)){
+			synchronized(pages){
+				Entry previous = pages.put(key, entry);
+				if(previous != null)
+					ResponseCache.bytes -= previous.size;
+				ResponseCache.bytes += entry.size;
+				Iterator<Entry> iterator = pages.values().iterator();
+				while(ResponseCache.bytes > maxBytes && iterator.hasNext()){
+					ResponseCache.bytes -= iterator.next().size;
+					iterator.remove();
+				}
+			}
+		}
+		return respond(entry, echo);
+	}
+
+	/**
+	 * Forgets every page of the given model, called when it is written to
+	 * @param model the model type
+	 */
+	public static void invalidate(Class<?> model) {
+		String name = model.getName();
+		// pages being loaded now will not be cached
+		getCounter(name).incrementAndGet();
+		synchronized(pages){
+			Iterator<Entry> iterator = pages.values().iterator();
+			while(iterator.hasNext()){
+				Entry entry = iterator.next();
+				if(entry.model.equals(name)){
+					bytes -= entry.size;
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets every page and reloads the configuration, called when the application is reloaded
+	 */
+	public static void clear() {
+		synchronized(pages){
+			pages.clear();
+			bytes = 0;
+		}
+		generations.clear();
+		maxBytes = -1;
+	}
+
+	private static AtomicLong getCounter(String model) {
+		AtomicLong ret = generations.get(model);
+		if(ret == null){
+			synchronized(generations){
+				ret = generations.get(model);
+				if(ret == null){
+					ret = new AtomicLong();
+					generations.put(model, ret);
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static long getMaxBytes() {
+		if(maxBytes == -1)
+			maxBytes = Long.parseLong(Play.configuration.getProperty("resteasy.crud.responseCache.maxBytes", "10485760"));
+		return maxBytes;
+	}
+
+	private static Response respond(Entry entry, String echo) {
+		byte[] body = entry.prefix;
+		if(entry.suffix != null){
+			ByteArrayOutputStream out = new ByteArrayOutputStream(entry.prefix.length + entry.suffix.length + 64);
+			out.write(entry.prefix, 0, entry.prefix.length);
+			byte[] escaped = toBytes(escape(echo, entry.mediaType), entry.mediaType);
+			out.write(escaped, 0, escaped.length);
+			out.write(entry.suffix, 0, entry.suffix.length);
+			body = out.toByteArray();
+		}
+		return Response.ok(body, entry.mediaType).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+	}
+
+	private static boolean isJSON(MediaType mediaType) {
+		return mediaType.getSubtype().endsWith("json");
+	}
+
+	/**
+	 * Escapes the echo value for the page. In JSON the placeholder includes its quotes and we write the value 
+	 * as Jettison would, which makes numbers and booleans of values that look like them.
+	 */
+	private static String escape(String value, MediaType mediaType) {
+		if(isJSON(mediaType))
+			return StreamingJSONWriter.toJSON(value);
+		StringBuilder ret = new StringBuilder(value.length() + 16);
+		for(int i=0;i<value.length();i++){
+			char c = value.charAt(i);
+			if(c == '&')
+				ret.append("&amp;");
+			else if(c == '<')
+				ret.append("&lt;");
+			else if(c == '>')
+				ret.append("&gt;");
+			else if(c < 0x20 && c != '\t' && c != '\n' && c != '\r')
+				// not allowed in XML 1.0
+				continue;
+			else
+				ret.append(c);
+		}
+		return ret.toString();
+	}
+
+	private static byte[] toBytes(String value, MediaType mediaType) {
+		String charset = mediaType.getParameters().get("charset");
+		try {
+			return value.getBytes(charset != null ? charset : "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int indexOf(byte[] bytes, byte[] sought) {
+		outer:
+		for(int i=0;i<=bytes.length - sought.length;i++){
+			for(int j=0;j<sought.length;j++){
+				if(bytes[i+j] != sought[j])
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+/**
+ * Specifies how a searchable field is matched against the search string.
+ */
+public enum SearchMode {
+	/**
+	 * The field contains the search string, ignoring case. No index can help with this one.
+	 */
+	CONTAINS,
+	/**
+	 * The field starts with the search string, ignoring case. An index on lower(field) can help. Only for 
+	 * String fields.
+	 */
+	PREFIX,
+	/**
+	 * The field starts with the search string, for columns that are already case-insensitive (by collation).
+	 * A plain index on the column can help. Only for String fields.
+	 */
+	CASE_INSENSITIVE_PREFIX,
+	/**
+	 * The field is equal to the search string. Only for String fields.
+	 */
+	EXACT,
+	/**
+	 * The field is matched by the predicate specified in {@link CRUDField#searchPredicate()}, typically a 
+	 * full-text search function of your database.
+	 */
+	FULLTEXT;
+
+	/**
+	 * Name of the HQL parameter holding the search string
+	 */
+	public static final String SEARCH_PARAMETER = "_search";
+	/**
+	 * Name of the HQL parameter holding the escaped and lower-cased search string followed by a wildcard
+	 */
+	public static final String PREFIX_PARAMETER = "_prefix";
+	/**
+	 * The LIKE escape character we use for prefix matching
+	 */
+	public static final char ESCAPE = '!';
+
+	/**
+	 * Checks if this mode can match a field of the given type. The search string is bound as a String, 
+	 * which only the database compares to String columns with equality or LIKE.
+	 * @param type the Java type of the field
+	 * @return true if this mode can match that field
+	 */
+	public boolean supports(Class<?> type) {
+		switch(this){
+		case PREFIX:
+		case CASE_INSENSITIVE_PREFIX:
+		case EXACT:
+			return type == String.class;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Makes the HQL predicate for the given field
+	 * @param field the field name
+	 * @param fullTextPredicate the predicate to use for {@link #FULLTEXT}, where {field} is replaced by the field
+	 * name and the search string is in the :_search parameter
+	 * @return the HQL predicate
+	 */
+	public String predicate(String field, String fullTextPredicate) {
+		switch(this){
+		case CONTAINS:
+			return "LOCATE(lower(:" + SEARCH_PARAMETER + "), lower(" + field + ")) > 0";
+		case PREFIX:
+			return "lower(" + field + ") LIKE :" + PREFIX_PARAMETER + " ESCAPE '" + ESCAPE + "'";
+		case CASE_INSENSITIVE_PREFIX:
+			return field + " LIKE :" + PREFIX_PARAMETER + " ESCAPE '" + ESCAPE + "'";
+		case EXACT:
+			return field + " = :" + SEARCH_PARAMETER;
+		case FULLTEXT:
+			if(fullTextPredicate == null || fullTextPredicate.length() == 0)
+				throw new RuntimeException("Missing full-text search predicate for field "+field);
+			return fullTextPredicate.replace("{field}", field);
+		}
+		throw new RuntimeException("Unknown search mode: "+this);
+	}
+
+	/**
+	 * Makes the value of the {@link #PREFIX_PARAMETER} parameter for the given search string
+	 * @param search the search string
+	 * @return the lower-cased search string with LIKE wildcards escaped, followed by a wildcard
+	 */
+	public static String prefix(String search) {
+		return likePrefix(search.toLowerCase());
+	}
+
+	/**
+	 * Makes a LIKE pattern that matches Strings starting with the given value, using {@link #ESCAPE}
+	 * @param value the prefix
+	 * @return the value with LIKE wildcards escaped, followed by a wildcard
+	 */
+	public static String likePrefix(String value) {
+		StringBuilder ret = new StringBuilder(value.length() + 2);
+		for(int i=0;i<value.length();i++){
+			char c = value.charAt(i);
+			if(c == '%' || c == '_' || c == ESCAPE)
+				ret.append(ESCAPE);
+			ret.append(c);
+		}
+		return ret.append('%').toString();
+	}
+}
@@ -0,0 +1,226 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parsed sort order, as specified in {@link DataTableQuery#sort}: a list of columns, each with a direction.
+ * Columns are property names, dotted property paths or column numbers. We only ever put the canonical form of
+ * a sort order in HQL, and only after checking its columns against the set of sortable columns, so user input
+ * never makes it to the query as-is.
+ * 
+ * Sort orders are immutable, and parsed once per distinct sort string.
+ */
+public class Sort {
+
+	/**
+	 * A single sort column
+	 */
+	public static class Order {
+		/**
+		 * The property name, or column number
+		 */
+		public final String column;
+		/**
+		 * True if this is a column number
+		 */
+		public final boolean numeric;
+		/**
+		 * True for a descending order
+		 */
+		public final boolean descending;
+
+		Order(String column, boolean descending) {
+			this.column = column;
+			this.numeric = isNumber(column);
+			this.descending = descending;
+		}
+	}
+
+	/**
+	 * Maximum number of sort strings we remember
+	 */
+	public static final int MAX_SORTS = 1000;
+
+	// marks sort strings that do not parse
+	private static final Sort INVALID = new Sort(Collections.<Order>emptyList());
+
+	private static final Map<String, Sort> sorts = new ConcurrentHashMap<String, Sort>();
+
+	private final List<Order> orders;
+	private final String hql;
+
+	private Sort(List<Order> orders) {
+		this.orders = Collections.unmodifiableList(orders);
+		StringBuilder hql = new StringBuilder();
+		for(Order order : orders){
+			if(hql.length() > 0)
+				hql.append(", ");
+			hql.append(order.column).append(order.descending ? " DESC" : " ASC");
+		}
+		this.hql = hql.toString();
+	}
+
+	/**
+	 * Parses a sort order
+	 * @param sort the sort order, as &lt;column&gt; (ASC|DESC)? (, &lt;column&gt; (ASC|DESC)?)*, case-insensitive
+	 * @return the sort order, or null if it is null or does not parse
+	 */
+	public static Sort parse(String sort) {
+		if(sort == null)
+			return null;
+		Sort ret = sorts.get(sort);
+		if(ret == null){
+			ret = doParse(sort);
+			if(sorts.size() >= MAX_SORTS)
+				sorts.clear();
+			sorts.put(sort, ret);
+		}
+		return ret == INVALID ? null : ret;
+	}
+
+	/**
+	 * Parses a sort order and checks that it only uses the given columns
+	 * @param sort the sort order, as in {@link #parse(String)}
+	 * @param validColumns the property names we can sort on, any column number is allowed
+	 * @return the sort order, or null if it is null, does not parse or uses another column
+	 */
+	public static Sort parse(String sort, Set<String> validColumns) {
+		Sort ret = parse(sort);
+		return ret != null && ret.isValid(validColumns) ? ret : null;
+	}
+
+	private static Sort doParse(String sort) {
+		List<Order> orders = new ArrayList<Order>();
+		int length = sort.length();
+		int start = 0;
+		while(start <= length){
+			int end = sort.indexOf(',', start);
+			if(end == -1)
+				end = length;
+			// trim the fragment
+			while(start < end && Character.isWhitespace(sort.charAt(start)))
+				start++;
+			int last = end;
+			while(last > start && Character.isWhitespace(sort.charAt(last - 1)))
+				last--;
+			boolean descending = false;
+			if(endsWithWord(sort, start, last, "desc")){
+				descending = true;
+				last -= 4;
+			}else if(endsWithWord(sort, start, last, "asc"))
+				last -= 3;
+			while(last > start && Character.isWhitespace(sort.charAt(last - 1)))
+				last--;
+			if(start == last)
+				return INVALID;
+			// identifiers, separated by dots for the paths of hand-written resources
+			for(int i=start;i<last;i++){
+				char c = sort.charAt(i);
+				if(c == '.'){
+					if(i == start || i == last - 1 || sort.charAt(i - 1) == '.')
+						return INVALID;
+				}else if(!Character.isJavaIdentifierPart(c))
+					return INVALID;
+			}
+			orders.add(new Order(sort.substring(start, last), descending));
+			start = end + 1;
+		}
+		return new Sort(orders);
+	}
+
+	// checks that the fragment ends with a whitespace then the given lower-case word, ignoring case
+	private static boolean endsWithWord(String sort, int start, int end, String word) {
+		int wordStart = end - word.length();
+		return wordStart > start 
+			&& Character.isWhitespace(sort.charAt(wordStart - 1))
+			&& sort.regionMatches(true, wordStart, word, 0, word.length());
+	}
+
+	private static boolean isNumber(String column) {
+		for(int i=0;i<column.length();i++){
+			char c = column.charAt(i);
+			if(c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that this sort order only uses the given columns
+	 * @param validColumns the property names we can sort on, any column number is allowed
+	 */
+	public boolean isValid(Set<String> validColumns) {
+		for(Order order : orders){
+			if(!order.numeric && !validColumns.contains(order.column))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes a sort order that ends with the given column, if it does not already sort on it
+	 * @param column the property name
+	 * @param descending the direction of that column
+	 * @return the new sort order, or this one if it already sorts on that column
+	 */
+	public Sort with(String column, boolean descending) {
+		for(Order order : orders){
+			if(order.column.equals(column))
+				return this;
+		}
+		List<Order> orders = new ArrayList<Order>(this.orders);
+		orders.add(new Order(column, descending));
+		return new Sort(orders);
+	}
+
+	/**
+	 * @return the sort columns, in order
+	 */
+	public List<Order> getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the canonical ORDER BY clause, as in <tt>a ASC, b DESC</tt>
+	 */
+	public String getOrder() {
+		return hql;
+	}
+
+	/**
+	 * Makes a sort order on the given column
+	 * @param column the property name
+	 * @param descending the direction
+	 */
+	public static Sort by(String column, boolean descending) {
+		return new Sort(Collections.singletonList(new Order(column, descending)));
+	}
+
+	@Override
+	public String toString() {
+		return hql;
+	}
+}
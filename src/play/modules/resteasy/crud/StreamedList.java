@@ -0,0 +1,129 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package play.modules.resteasy.crud;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import play.Play;
+
+/**
+ * A list of query results that are loaded from a forward-only scroll as the list is iterated, rather than
+ * all at once. The session is flushed and cleared every {@link #getBatchSize()} rows, so only that many entities
+ * are held in memory at once, which makes it possible to marshal very large lists. 
+ * 
+ * This list can only be iterated once, and its size is not known in advance. The scroll is closed when it is 
+ * exhausted, or with the session otherwise. JAXB writes XML as it goes, but Jettison builds the whole JSON 
+ * document in memory before writing it, so lists of these are always written to JSON with the streaming 
+ * writer of <code>rest.resteasy.crud.StreamingJSONProvider</code>, whatever {@link StreamingJSON} says.
+ * 
+ * @param <T> The type of entity returned
+ */
+public class StreamedList<T> extends AbstractList<T> {
+
+	private final ScrollableResults results;
+	private final Session session;
+	private final int batchSize;
+	private final Projection projection;
+	private boolean iterated;
+
+	public StreamedList(ScrollableResults results, Session session, int batchSize) {
+		this(results, session, batchSize, null);
+	}
+
+	/**
+	 * Makes a streamed list of sparse entities
+	 * @param projection the projection the rows are made of, or null if they are entities
+	 */
+	public StreamedList(ScrollableResults results, Session session, int batchSize, Projection projection) {
+		this.results = results;
+		this.session = session;
+		this.batchSize = batchSize;
+		this.projection = projection;
+	}
+
+	/**
+	 * Gets the number of rows after which the session is cleared when streaming, as set by
+	 * <code>resteasy.crud.stream.batchSize</code>, defaults to 100.
+	 */
+	public static int getBatchSize() {
+		return Integer.parseInt(Play.configuration.getProperty("resteasy.crud.stream.batchSize", "100"));
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		if(iterated)
+			throw new IllegalStateException("Streamed lists can only be iterated once");
+		iterated = true;
+		return new Iterator<T>() {
+			private int read;
+			private Boolean hasNext;
+
+			public boolean hasNext() {
+				if(hasNext == null){
+					// the previous batch has been marshalled by now, so we can let it go
+					if(read > 0 && read % batchSize == 0){
+						session.flush();
+						session.clear();
+					}
+					hasNext = results.next();
+					if(!hasNext)
+						results.close();
+				}
+				return hasNext;
+			}
+
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				hasNext = null;
+				read++;
+				Object[] row = results.get();
+				if(projection != null)
+					return (T) projection.fromRow(row);
+				return (T) (row.length == 1 ? row[0] : row);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public T get(int index) {
+		throw new UnsupportedOperationException("Streamed lists can only be iterated");
+	}
+
+	@Override
+	public int size() {
+		throw new UnsupportedOperationException("The size of streamed lists is not known in advance");
+	}
+
+	@Override
+	public String toString() {
+		return "StreamedList[batchSize: "+batchSize+"]";
+	}
+}
@@ -0,0 +1,39 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marshals the JSON responses of a resource method with the streaming JSON writer of 
+ * <code>rest.resteasy.crud.StreamingJSONProvider</code> rather than with JAXB and Jettison. The JSON is the same, 
+ * but it is written as the entities are walked, without building the whole document in memory first.
+ * When placed on a {@link CRUD} resource class, it is added to the generated list, get, descriptor and 
+ * autocomplete methods. Set <code>resteasy.crud.json=streaming</code> to use it for every JSON response.
+ * Entities that use JAXB features the writer does not support are still marshalled by JAXB.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface StreamingJSON {
+}
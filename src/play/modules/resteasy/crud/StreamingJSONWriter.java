@@ -0,0 +1,281 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+
+import play.Play;
+
+/**
+ * A {@link JAXBWalker.Sink} that writes JSON text as it goes, exactly as the Jettison mapped convention 
+ * writes the same document: every value is typed from its XML text, so that "12" is a number and "true" a 
+ * boolean whatever the Java type was, numbers lose their trailing decimal zeros, and slashes are escaped.
+ */
+public class StreamingJSONWriter implements JAXBWalker.Sink {
+
+	private static volatile Boolean global;
+	private static final Annotation STREAMING_JSON;
+	static{
+		try {
+			STREAMING_JSON = StreamingJSONWriter.class.getDeclaredMethod("streamingJSON").getAnnotation(StreamingJSON.class);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// only there for its annotation
+	@StreamingJSON
+	private static void streamingJSON(){}
+
+	/**
+	 * Checks if we should use this writer for a response, rather than JAXB
+	 * @param annotations the annotations of the resource method
+	 * @return true if <code>resteasy.crud.json</code> is set to <code>streaming</code> or if the resource 
+	 * method has {@link StreamingJSON}
+	 */
+	public static boolean isEnabled(Annotation[] annotations) {
+		Boolean ret = global;
+		if(ret == null){
+			ret = "streaming".equalsIgnoreCase(Play.configuration.getProperty("resteasy.crud.json", "jaxb").trim());
+			global = ret;
+		}
+		if(ret)
+			return true;
+		if(annotations != null){
+			for(Annotation annotation : annotations){
+				if(annotation.annotationType() == StreamingJSON.class)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Formats a value as Jettison writes it: as a number or boolean if it looks like one, as a String otherwise
+	 * @param text the XML text of the value
+	 * @return the JSON value
+	 */
+	public static String toJSON(String text) {
+		StringWriter ret = new StringWriter(text.length() + 8);
+		try {
+			new StreamingJSONWriter(ret).value(text, text);
+		} catch (IOException e) {
+			// we are writing to memory
+			throw new RuntimeException(e);
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Adds {@link StreamingJSON} to resource method annotations, so that the response is written with this writer
+	 * @param annotations the annotations of the resource method
+	 * @return the annotations, with {@link StreamingJSON}
+	 */
+	public static Annotation[] withStreamingJSON(Annotation[] annotations) {
+		if(annotations == null)
+			return new Annotation[]{STREAMING_JSON};
+		Annotation[] ret = new Annotation[annotations.length + 1];
+		System.arraycopy(annotations, 0, ret, 0, annotations.length);
+		ret[annotations.length] = STREAMING_JSON;
+		return ret;
+	}
+
+	/**
+	 * Reloads the configuration, called when the application is reloaded
+	 */
+	public static void reset() {
+		global = null;
+	}
+
+	private final Writer writer;
+	// true when the next value or key in the current object or array needs a comma before it
+	private boolean comma;
+
+	/**
+	 * Creates a JSON writer
+	 * @param writer where to write the JSON text, which we do not flush or close
+	 */
+	public StreamingJSONWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	public void startObject() throws IOException {
+		separate();
+		writer.write('{');
+		comma = false;
+	}
+
+	public void endObject() throws IOException {
+		writer.write('}');
+		comma = true;
+	}
+
+	public void startArray() throws IOException {
+		separate();
+		writer.write('[');
+		comma = false;
+	}
+
+	public void endArray() throws IOException {
+		writer.write(']');
+		comma = true;
+	}
+
+	public void key(String key) throws IOException {
+		separate();
+		quote(key);
+		writer.write(':');
+		comma = false;
+	}
+
+	public void value(Object value, String text) throws IOException {
+		separate();
+		writePrimitive(text);
+		comma = true;
+	}
+
+	private void separate() throws IOException {
+		if(comma)
+			writer.write(',');
+	}
+
+	/**
+	 * Writes a value the way Jettison's DefaultConverter types it: as a long, a finite double or a boolean
+	 * if that type prints back to the same text, otherwise as a String
+	 */
+	private void writePrimitive(String text) throws IOException {
+		if(isLong(text)){
+			writer.write(text);
+			return;
+		}
+		if(mayBeDouble(text)){
+			try {
+				Double number = Double.valueOf(text);
+				if(!number.isInfinite() && !number.isNaN() && number.toString().equals(text)){
+					writer.write(stripZeros(text));
+					return;
+				}
+			} catch (NumberFormatException e) {
+				// not a number after all
+			}
+		}
+		if("true".equals(text) || "false".equals(text)){
+			writer.write(text);
+			return;
+		}
+		quote(text);
+	}
+
+	private static boolean isLong(String text) {
+		int length = text.length();
+		if(length == 0 || length > 20)
+			return false;
+		int i = text.charAt(0) == '-' ? 1 : 0;
+		// Long.toString does not print leading zeros or plus signs
+		if(i == length || (text.charAt(i) == '0' && length > i + 1) || (i == 1 && length == 2 && text.charAt(1) == '0'))
+			return false;
+		for(int j=i;j<length;j++){
+			char c = text.charAt(j);
+			if(c < '0' || c > '9')
+				return false;
+		}
+		if(length - i < 19)
+			return true;
+		try {
+			Long.parseLong(text);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static boolean mayBeDouble(String text) {
+		// Double.toString always prints a dot, so this avoids most exceptions
+		if(text.length() < 3 || text.indexOf('.') == -1)
+			return false;
+		char c = text.charAt(0);
+		return c == '-' || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * Does what Jettison's JSONObject.numberToString does to the text of a double
+	 */
+	private static String stripZeros(String text) {
+		if(text.indexOf('e') != -1 || text.indexOf('E') != -1)
+			return text;
+		int end = text.length();
+		while(text.charAt(end - 1) == '0')
+			end--;
+		if(text.charAt(end - 1) == '.')
+			end--;
+		return text.substring(0, end);
+	}
+
+	/**
+	 * Quotes a String as Jettison's JSONObject.quote does
+	 */
+	private void quote(String string) throws IOException {
+		writer.write('"');
+		int length = string.length();
+		int start = 0;
+		for(int i=0;i<length;i++){
+			char c = string.charAt(i);
+			String escape;
+			switch(c){
+			case '"':
+				escape = "\\\"";
+				break;
+			case '\\':
+				escape = "\\\\";
+				break;
+			case '/':
+				escape = "\\/";
+				break;
+			case '\b':
+				escape = "\\b";
+				break;
+			case '\t':
+				escape = "\\t";
+				break;
+			case '\n':
+				escape = "\\n";
+				break;
+			case '\f':
+				escape = "\\f";
+				break;
+			case '\r':
+				escape = "\\r";
+				break;
+			default:
+				if(c >= ' ')
+					continue;
+				String hex = "000" + Integer.toHexString(c);
+				escape = "\\u" + hex.substring(hex.length() - 4);
+			}
+			writer.write(string, start, i - start);
+			writer.write(escape);
+			start = i + 1;
+		}
+		writer.write(string, start, length - start);
+		writer.write('"');
+	}
+}
@@ -0,0 +1,61 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import play.db.jpa.JPA;
+
+/**
+ * Runs code when the current JPA transaction completes.
+ */
+public class TransactionHooks {
+
+	/**
+	 * Runs the given code once the current transaction is committed, or right away if there is no transaction.
+	 * The code is not run if the transaction is rolled back.
+	 * @param runnable the code to run
+	 */
+	public static void afterCommit(final Runnable runnable) {
+		if(!JPA.isEnabled() || !JPA.isInsideTransaction()){
+			runnable.run();
+			return;
+		}
+		Transaction transaction = ((Session) JPA.em().getDelegate()).getTransaction();
+		if(!transaction.isActive()){
+			runnable.run();
+			return;
+		}
+		transaction.registerSynchronization(new Synchronization(){
+			@Override
+			public void beforeCompletion() {
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				if(status == Status.STATUS_COMMITTED)
+					runnable.run();
+			}
+		});
+	}
+}
@@ -18,6 +18,11 @@
 */
 package play.modules.resteasy.crud;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+
 /**
  * Specifies a field type.
  * @author Stéphane Épardaud <stef@epardaud.fr>
@@ -47,4 +52,37 @@ public enum Type {
 	 * Date type
 	 */
 	DATE;
+
+	/**
+	 * Infers the field type from a Java type
+	 * @param fieldType the Java type of the field
+	 * @return the field type, or null if we do not know how to represent this Java type
+	 */
+	public static Type forClass(Class<?> fieldType) {
+		if(fieldType == String.class){
+			return STRING;
+		}else if(fieldType == Integer.class
+				|| fieldType == Integer.TYPE
+				|| fieldType == Long.class
+				|| fieldType == Long.TYPE
+				|| fieldType == Short.class
+				|| fieldType == Short.TYPE
+				|| fieldType == BigInteger.class){
+			return INTEGER;
+		}else if(fieldType == Float.class
+				|| fieldType == Float.TYPE
+				|| fieldType == Double.class
+				|| fieldType == Double.TYPE
+				|| fieldType == BigDecimal.class){
+			return DECIMAL;
+		}else if(fieldType == Date.class
+				|| fieldType == Calendar.class
+				|| fieldType == java.sql.Date.class
+				|| fieldType == java.sql.Timestamp.class){
+			return DATE;
+		}else if(fieldType == Boolean.class){
+			return BOOLEAN;
+		}
+		return null;
+	}
 }
@@ -0,0 +1,139 @@
+/*
+    This file is part of resteasy-crud-play-module.
+    
+    Copyright Lunatech Research 2010
+
+    resteasy-crud-play-module is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    resteasy-crud-play-module is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU General Lesser Public License
+    along with resteasy-crud-play-module.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package play.modules.resteasy.crud;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Converts property values to and from their String form, for the field types we support (see {@link Type}).
+ */
+public class TypeConverter {
+
+	private static final String[] DATE_FORMATS = {
+		"yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+		"yyyy-MM-dd'T'HH:mm:ssZ",
+		"yyyy-MM-dd'T'HH:mm:ss",
+		"yyyy-MM-dd"
+	};
+
+	/**
+	 * Parses a String value into the given Java type. Dates can be specified as milliseconds since the epoch
+	 * or in ISO-8601 format.
+	 * @param type the Java type of the field
+	 * @param value the value to parse
+	 * @return the value, converted to the Java type
+	 * @throws IllegalArgumentException if the value is not valid for the given type or if the type is not supported
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Object parse(Class<?> type, String value) {
+		if(value == null)
+			return null;
+		if(type == String.class)
+			return value;
+		if(type == Integer.class || type == Integer.TYPE)
+			return Integer.valueOf(value.trim());
+		if(type == Long.class || type == Long.TYPE)
+			return Long.valueOf(value.trim());
+		if(type == Short.class || type == Short.TYPE)
+			return Short.valueOf(value.trim());
+		if(type == BigInteger.class)
+			return new BigInteger(value.trim());
+		if(type == Float.class || type == Float.TYPE)
+			return Float.valueOf(value.trim());
+		if(type == Double.class || type == Double.TYPE)
+			return Double.valueOf(value.trim());
+		if(type == BigDecimal.class)
+			return new BigDecimal(value.trim());
+		if(type == Boolean.class || type == Boolean.TYPE){
+			if("true".equalsIgnoreCase(value.trim()))
+				return Boolean.TRUE;
+			if("false".equalsIgnoreCase(value.trim()))
+				return Boolean.FALSE;
+			throw new IllegalArgumentException("Invalid boolean value: "+value);
+		}
+		if(type == Date.class)
+			return parseDate(value);
+		if(type == java.sql.Date.class)
+			return new java.sql.Date(parseDate(value).getTime());
+		if(type == java.sql.Timestamp.class)
+			return new java.sql.Timestamp(parseDate(value).getTime());
+		if(type == Calendar.class){
+			Calendar ret = Calendar.getInstance();
+			ret.setTime(parseDate(value));
+			return ret;
+		}
+		if(type.isEnum())
+			return Enum.valueOf((Class<? extends Enum>)type, value.trim());
+		throw new IllegalArgumentException("Unsupported field type: "+type.getName());
+	}
+
+	/**
+	 * Formats a value so that {@link #parse(Class, String)} can read it back. Dates are formatted as 
+	 * milliseconds since the epoch.
+	 * @param value the value to format
+	 * @return the formatted value
+	 */
+	public static String format(Object value) {
+		if(value == null)
+			return null;
+		if(value instanceof Date)
+			return String.valueOf(((Date)value).getTime());
+		if(value instanceof Calendar)
+			return String.valueOf(((Calendar)value).getTimeInMillis());
+		if(value instanceof Enum)
+			return ((Enum<?>)value).name();
+		return value.toString();
+	}
+
+	private static Date parseDate(String value) {
+		value = value.trim();
+		if(isInteger(value))
+			return new Date(Long.parseLong(value));
+		for(String format : DATE_FORMATS){
+			SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+			dateFormat.setLenient(false);
+			// make sure we read the whole value and not just a prefix
+			ParsePosition position = new ParsePosition(0);
+			Date ret = dateFormat.parse(value, position);
+			if(ret != null && position.getIndex() == value.length())
+				return ret;
+		}
+		throw new IllegalArgumentException("Invalid date value: "+value);
+	}
+
+	private static boolean isInteger(String value) {
+		int length = value.length();
+		if(length == 0)
+			return false;
+		int i = value.charAt(0) == '-' ? 1 : 0;
+		if(i == length)
+			return false;
+		for(;i<length;i++){
+			char c = value.charAt(i);
+			if(c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+}
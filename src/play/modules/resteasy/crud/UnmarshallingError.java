@@ -35,6 +35,10 @@ public class UnmarshallingError extends WebApplicationException {
 		super(buildResponse(events));
 	}
 
+	public UnmarshallingError(String message) {
+		super(buildResponse(message));
+	}
+
 	private static Response buildResponse(List<ValidationEvent> events) {
 		InvalidResponse response = new InvalidResponse();
 		for(ValidationEvent e : events)
@@ -42,4 +46,10 @@ public class UnmarshallingError extends WebApplicationException {
 		return Response.status(HttpURLConnection.HTTP_BAD_REQUEST).entity(response).build();
 	}
 
+	private static Response buildResponse(String message) {
+		InvalidResponse response = new InvalidResponse();
+		response.addGlobalError(message);
+		return Response.status(HttpURLConnection.HTTP_BAD_REQUEST).entity(response).build();
+	}
+
 }